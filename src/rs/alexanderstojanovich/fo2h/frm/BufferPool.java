@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2021 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.fo2h.frm;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of (heap) I/O buffers shared by all threads. Buffers are kept in size
+ * classes (powers of two) so once batch is warmed up reading and writing FRMs
+ * allocates no new buffers. Number of idle buffers per class and total idle
+ * bytes are limited so pool doesn't keep big buffers of single large FRM.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class BufferPool {
+
+    // smallest size class (4 KB)
+    public static final int MIN_CLASS = 12;
+    // biggest size class (64 MB), bigger buffers are not pooled
+    public static final int MAX_CLASS = 26;
+
+    // max number of idle buffers kept per size class
+    private static final int MAX_IDLE = Math.max(2, 2 * Runtime.getRuntime().availableProcessors());
+    // max number of idle bytes kept in all size classes (1/8 of the heap)
+    private static final long MAX_IDLE_BYTES = Runtime.getRuntime().maxMemory() / 8L;
+    // number of idle bytes currently kept in the pool
+    private static final AtomicLong IDLE_BYTES = new AtomicLong();
+
+    private static final ConcurrentLinkedQueue<ByteBuffer>[] FREE = createClasses();
+    private static final AtomicInteger[] IDLE = new AtomicInteger[MAX_CLASS + 1];
+
+    static {
+        for (int i = MIN_CLASS; i <= MAX_CLASS; i++) {
+            IDLE[i] = new AtomicInteger();
+        }
+    }
+
+    private BufferPool() {
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ConcurrentLinkedQueue<ByteBuffer>[] createClasses() {
+        ConcurrentLinkedQueue<ByteBuffer>[] result = new ConcurrentLinkedQueue[MAX_CLASS + 1];
+        for (int i = MIN_CLASS; i <= MAX_CLASS; i++) {
+            result[i] = new ConcurrentLinkedQueue<>();
+        }
+        return result;
+    }
+
+    /**
+     * Gets size class of buffer which can hold given number of bytes
+     *
+     * @param size number of bytes
+     * @return size class (power of two exponent)
+     */
+    private static int sizeClass(int size) {
+        if (size <= (1 << MIN_CLASS)) {
+            return MIN_CLASS;
+        }
+        return 32 - Integer.numberOfLeadingZeros(size - 1);
+    }
+
+    /**
+     * Borrow buffer from the pool. Returned buffer is cleared, big endian and
+     * it's limit is set to the requested size.
+     *
+     * @param size number of bytes required
+     * @return buffer with at least given capacity
+     */
+    public static ByteBuffer acquire(int size) {
+        final int sc = sizeClass(size);
+        if (sc > MAX_CLASS) {
+            return ByteBuffer.allocate(size);
+        }
+        ByteBuffer buffer = FREE[sc].poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocate(1 << sc);
+        } else {
+            IDLE[sc].decrementAndGet();
+            IDLE_BYTES.addAndGet(-buffer.capacity());
+        }
+        buffer.clear();
+        buffer.limit(size);
+        return buffer;
+    }
+
+    /**
+     * Return buffer to the pool. Buffers not made by the pool (mapped,
+     * oversized) are ignored. Buffer must not be used after the release.
+     *
+     * @param buffer buffer to return
+     */
+    public static void release(ByteBuffer buffer) {
+        if (buffer == null || buffer.isDirect() || buffer.isReadOnly()) {
+            return;
+        }
+        final int capacity = buffer.capacity();
+        if (Integer.bitCount(capacity) != 1) {
+            return;
+        }
+        final int sc = Integer.numberOfTrailingZeros(capacity);
+        if (sc < MIN_CLASS || sc > MAX_CLASS) {
+            return;
+        }
+        if (IDLE[sc].incrementAndGet() > MAX_IDLE) {
+            IDLE[sc].decrementAndGet();
+            return;
+        }
+        if (IDLE_BYTES.addAndGet(capacity) > MAX_IDLE_BYTES) {
+            IDLE_BYTES.addAndGet(-capacity);
+            IDLE[sc].decrementAndGet();
+            return;
+        }
+        FREE[sc].offer(buffer);
+    }
+
+}
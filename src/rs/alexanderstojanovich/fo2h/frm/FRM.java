@@ -22,8 +22,10 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import rs.alexanderstojanovich.fo2h.util.FO2HLogger;
 
@@ -33,6 +35,11 @@ import rs.alexanderstojanovich.fo2h.util.FO2HLogger;
  */
 public class FRM {
 
+    // size of the header (before frame data) in bytes
+    public static final int HEADER_SIZE = 62;
+    // size of the frame header (before frame pixels) in bytes
+    public static final int FRAME_HEADER_SIZE = 12;
+
     private int version; //  2-byte unsigned (0x0000)
     private int fps; // 2-byte unsigned (0x0004)
     private int actionFrame; // 2-byte unsigned (0x0006)
@@ -46,11 +53,16 @@ public class FRM {
     // image composed of frames (but frame 0 is primarily used)
     private final List<ImageData> frames = new ArrayList<>();
 
-    private int frameSize;
+    // frame index of read FRM (frames are decoded on demand)
+    private final List<FrameHeader> frameHeaders = new ArrayList<>();
+    // FRM content which frames are decoded from (null if not read)
+    private ByteBuffer source;
+    // source is borrowed from the buffer pool
+    private boolean pooled;
+    // file couldn't be read (missing, unreadable or truncated)
+    private boolean failed;
 
-    // 16 MB Buffer
-    private final byte buffer[] = new byte[0x1000000];
-    private int pos = 0x0000;
+    private int frameSize;
 
     /**
      * Create FRM by reading it from the file
@@ -58,7 +70,23 @@ public class FRM {
      * @param frm frm binary file
      */
     public FRM(File frm) {
-        read(frm);
+        read(frm, false);
+    }
+
+    // used for probing
+    private FRM() {
+    }
+
+    /**
+     * Create FRM by reading it from the file. Mapped file is decoded straight
+     * from the mapped pages (without copying the file into the heap), which
+     * is preferred for big FRMs.
+     *
+     * @param frm frm binary file
+     * @param mapped map the file into memory instead of reading it
+     */
+    public FRM(File frm, boolean mapped) {
+        read(frm, mapped);
     }
 
     /**
@@ -97,15 +125,30 @@ public class FRM {
         }
     }
 
-    private void loadFromFile(File file) {
+    /**
+     * Load whole file into the buffer borrowed from the buffer pool (big
+     * endian, limit is the file size).
+     *
+     * @param file file to read from
+     * @return buffer with file content (null if reading failed)
+     */
+    private static ByteBuffer loadFromFile(File file) {
+        ByteBuffer buffer = null;
         FileInputStream fis = null;
         try {
             fis = new FileInputStream(file);
-            fis.read(buffer);
+            FileChannel channel = fis.getChannel();
+            buffer = BufferPool.acquire((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                // read until the buffer is full
+            }
+            buffer.flip();
         } catch (FileNotFoundException ex) {
             FO2HLogger.reportError(ex.getMessage(), ex);
         } catch (IOException ex) {
             FO2HLogger.reportError(ex.getMessage(), ex);
+            BufferPool.release(buffer);
+            buffer = null;
         } finally {
             if (fis != null) {
                 try {
@@ -115,16 +158,50 @@ public class FRM {
                 }
             }
         }
+        return buffer;
     }
 
-    private void storeToFile(File file) {
+    /**
+     * Map whole file into memory (read only, big endian).
+     *
+     * @param file file to map
+     * @return mapped buffer (null if mapping failed)
+     */
+    private static ByteBuffer mapFile(File file) {
+        ByteBuffer buffer = null;
+        FileInputStream fis = null;
+        try {
+            fis = new FileInputStream(file);
+            FileChannel channel = fis.getChannel();
+            // mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (FileNotFoundException ex) {
+            FO2HLogger.reportError(ex.getMessage(), ex);
+        } catch (IOException ex) {
+            FO2HLogger.reportError(ex.getMessage(), ex);
+        } finally {
+            if (fis != null) {
+                try {
+                    fis.close();
+                } catch (IOException ex) {
+                    FO2HLogger.reportError(ex.getMessage(), ex);
+                }
+            }
+        }
+        return buffer;
+    }
+
+    private static void storeToFile(File file, ByteBuffer buffer) {
         if (file.exists()) {
             file.delete();
         }
         FileOutputStream fos = null;
         try {
             fos = new FileOutputStream(file);
-            fos.write(buffer, 0, pos);
+            FileChannel channel = fos.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
         } catch (FileNotFoundException ex) {
             FO2HLogger.reportError(ex.getMessage(), ex);
         } catch (IOException ex) {
@@ -144,71 +221,270 @@ public class FRM {
      * Read binary data from the specified FRM file
      *
      * @param file is specified FRM file to read from
+     * @param mapped map the file instead of reading it
      */
-    private void read(File file) {
-        Arrays.fill(buffer, (byte) 0x00);
+    private void read(File file, boolean mapped) {
         frames.clear();
-        if (file.exists()) {
-            loadFromFile(file);
-        } else {
+        frameHeaders.clear();
+        failed = true;
+        if (!file.exists()) {
             return;
         }
+        ByteBuffer buffer = mapped ? mapFile(file) : loadFromFile(file);
+        if (buffer == null) {
+            return;
+        }
+        pooled = !mapped;
+        try {
+            read(buffer);
+            failed = false;
+        } catch (BufferUnderflowException ex) {
+            // no partial FRM is kept
+            frameHeaders.clear();
+            release();
+            FO2HLogger.reportError("File " + file.getName() + " is truncated!", ex);
+        }
+    }
+
+    /**
+     * Release the file content (pooled buffer is returned to the buffer
+     * pool). Frames which are not decoded can't be obtained afterwards, header
+     * and frame records are kept.
+     */
+    public void release() {
+        if (source != null && pooled) {
+            BufferPool.release(source);
+        }
+        source = null;
+        pooled = false;
+    }
+
+    /**
+     * Read header and frame index from the buffer (positioned at the
+     * beginning of FRM). Frame pixels are not decoded until requested.
+     *
+     * @param buffer buffer holding FRM content
+     */
+    private void read(ByteBuffer buffer) {
+        // assigned first, so buffer is released even if header is truncated
+        source = buffer;
+        readHeader(buffer);
         //----------------------------------------------------------------------
-        pos = 0x0000;
+        int total = 0;
+        while (total < frameSize && framesPerDirection > 0) {
+            for (int j = 0; j < framesPerDirection; j++) {
+                FrameHeader header = readFrameHeader(buffer, buffer.position() + FRAME_HEADER_SIZE);
+                final int area = header.getWidth() * header.getHeight();
+                if (buffer.remaining() < area) {
+                    throw new BufferUnderflowException();
+                }
+                frameHeaders.add(header);
+                buffer.position(buffer.position() + area);
+                total += FRAME_HEADER_SIZE + area;
+            }
+        }
+    }
+
+    /**
+     * Read fixed size header (first 62 bytes of FRM).
+     *
+     * @param buffer buffer holding the header
+     */
+    private void readHeader(ByteBuffer buffer) {
         // big endian motorola
-        version = ((buffer[pos] & 0xFF) << 24) | ((buffer[pos + 1] << 16) & 0xFF) | ((buffer[pos + 2] << 8) & 0xFF) | ((buffer[pos + 3]) & 0xFF);
-        pos += 4;
-        fps = ((buffer[pos] & 0xFF) << 8) | (buffer[pos + 1] & 0xFF);
-        pos += 2;
-        actionFrame = ((buffer[pos] & 0xFF) << 8) | (buffer[pos + 1] & 0xFF);
-        pos += 2;
-        framesPerDirection = ((buffer[pos] & 0xFF) << 8) | (buffer[pos + 1] & 0xFF);
-        pos += 2;
+        version = buffer.getInt();
+        fps = buffer.getShort() & 0xFFFF;
+        actionFrame = buffer.getShort() & 0xFFFF;
+        framesPerDirection = buffer.getShort() & 0xFFFF;
         //----------------------------------------------------------------------                
         for (int i = 0; i < 6; i++) {
-            shiftX[i] = (buffer[pos] << 8) | buffer[pos + 1];
-            pos += 2;
+            shiftX[i] = buffer.getShort();
         }
 
         for (int i = 0; i < 6; i++) {
-            shiftY[i] = (buffer[pos] << 8) | buffer[pos + 1];
-            pos += 2;
+            shiftY[i] = buffer.getShort();
         }
         //----------------------------------------------------------------------        
         for (int i = 0; i < 6; i++) {
-            offset[i] = ((buffer[pos] & 0xFF) << 24) | ((buffer[pos + 1] & 0xFF) << 16) | ((buffer[pos + 2] & 0xFF) << 8) | (buffer[pos + 3] & 0xFF);
-            pos += 4;
+            offset[i] = buffer.getInt();
         }
         //----------------------------------------------------------------------
-        frameSize = ((buffer[pos] & 0xFF) << 24) | ((buffer[pos + 1] & 0xFF) << 16) | ((buffer[pos + 2] & 0xFF) << 8) | (buffer[pos + 3] & 0xFF);
-        pos += 4;
+        frameSize = buffer.getInt();
+    }
+
+    /**
+     * Read frame record (12 bytes preceding frame pixels).
+     *
+     * @param buffer buffer holding the frame record
+     * @param dataPos position of the frame pixels in the FRM file
+     * @return frame header
+     */
+    private static FrameHeader readFrameHeader(ByteBuffer buffer, int dataPos) {
+        final int width = buffer.getShort() & 0xFFFF;
+        final int height = buffer.getShort() & 0xFFFF;
+        //----------------------------------------------------------------------
+        buffer.getInt(); // area
         //----------------------------------------------------------------------
-        int total = 0;
-        while (total < frameSize) {
-            for (int j = 0; j < framesPerDirection; j++) {
-                final int width = ((buffer[pos] & 0xFF) << 8) | (buffer[pos + 1] & 0xFF);
-                pos += 2;
-                final int height = ((buffer[pos] & 0xFF) << 8) | (buffer[pos + 1] & 0xFF);
-                pos += 2;
-                //--------------------------------------------------------------
-                pos += 4;
-                //--------------------------------------------------------------
-                final int offsetX = ((buffer[pos] & 0xFF) << 8) | (buffer[pos + 1] & 0xFF);
-                pos += 2;
-                final int offsetY = ((buffer[pos] & 0xFF) << 8) | (buffer[pos + 1] & 0xFF);
-                pos += 2;
-                //--------------------------------------------------------------
-                ImageData imgData = new ImageData(width, height, offsetX, offsetY);
-                for (int py = 0; py < imgData.getHeight(); py++) {
-                    for (int px = 0; px < imgData.getWidth(); px++) {
-                        byte index = buffer[pos++];
-                        imgData.setPixel(px, py, index);
+        final int offsetX = buffer.getShort();
+        final int offsetY = buffer.getShort();
+        return new FrameHeader(width, height, offsetX, offsetY, dataPos);
+    }
+
+    /**
+     * Probe the FRM file. Reads only the header and frame records (version,
+     * fps, frames per direction, shifts, frame dimensions and offsets)
+     * skipping over the frame pixels. Frames of probed FRM cannot be
+     * decoded.
+     *
+     * @param file FRM file to probe
+     * @return probed FRM or null if file is missing, unreadable or truncated
+     */
+    public static FRM probe(File file) {
+        FRM frm = null;
+        FileInputStream fis = null;
+        try {
+            fis = new FileInputStream(file);
+            FileChannel channel = fis.getChannel();
+            final long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            frm = new FRM();
+            frm.readHeader(header);
+            //------------------------------------------------------------------
+            ByteBuffer record = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+            long pos = HEADER_SIZE;
+            int total = 0;
+            while (total < frm.frameSize && frm.framesPerDirection > 0) {
+                for (int j = 0; j < frm.framesPerDirection; j++) {
+                    record.clear();
+                    readFully(channel, record, pos);
+                    FrameHeader frameHeader = readFrameHeader(record, (int) (pos + FRAME_HEADER_SIZE));
+                    final int area = frameHeader.getWidth() * frameHeader.getHeight();
+                    pos += FRAME_HEADER_SIZE + area;
+                    if (pos > size) {
+                        throw new BufferUnderflowException();
                     }
+                    frm.frameHeaders.add(frameHeader);
+                    total += FRAME_HEADER_SIZE + area;
+                }
+            }
+        } catch (FileNotFoundException ex) {
+            FO2HLogger.reportError(ex.getMessage(), ex);
+        } catch (IOException ex) {
+            FO2HLogger.reportError(ex.getMessage(), ex);
+            frm = null;
+        } catch (BufferUnderflowException ex) {
+            FO2HLogger.reportError("File " + file.getName() + " is truncated!", ex);
+            frm = null;
+        } finally {
+            if (fis != null) {
+                try {
+                    fis.close();
+                } catch (IOException ex) {
+                    FO2HLogger.reportError(ex.getMessage(), ex);
                 }
-                frames.add(imgData);
-                total += 12 + width * height;
             }
         }
+        return frm;
+    }
+
+    /**
+     * Read from the channel (at given position) until the buffer is full.
+     *
+     * @param channel file channel
+     * @param buffer buffer to fill (flipped after reading)
+     * @param pos position in the file
+     * @throws IOException if reading fails
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long pos) throws IOException {
+        while (buffer.hasRemaining()) {
+            int num = channel.read(buffer, pos + buffer.position());
+            if (num == -1) {
+                throw new BufferUnderflowException();
+            }
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Gets total number of pixels in all the frames (cost of processing this
+     * FRM). Works on probed FRM as well.
+     *
+     * @return total number of pixels
+     */
+    public long getPixelCount() {
+        long count = 0L;
+        if (frameHeaders.isEmpty()) {
+            for (ImageData frame : frames) {
+                count += (long) frame.getWidth() * frame.getHeight();
+            }
+        } else {
+            for (FrameHeader header : frameHeaders) {
+                count += (long) header.getWidth() * header.getHeight();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Decode frame pixels from the FRM content.
+     *
+     * @param header frame to decode
+     * @return decoded frame
+     */
+    private ImageData decode(FrameHeader header) {
+        ImageData imgData = new ImageData(header.getWidth(), header.getHeight(), header.getOffsetX(), header.getOffsetY());
+        // duplicate so frames can be decoded from different threads
+        ByteBuffer buffer = source.duplicate();
+        buffer.position(header.getDataPos());
+        buffer.get(imgData.getData());
+        return imgData;
+    }
+
+    /**
+     * Gets number of frames in this FRM (without decoding them)
+     *
+     * @return number of frames
+     */
+    public int getFrameCount() {
+        return frameHeaders.isEmpty() ? frames.size() : frameHeaders.size();
+    }
+
+    /**
+     * Has reading of the FRM file failed (file is missing, unreadable or
+     * truncated). Such FRM has no frames and must not be written.
+     *
+     * @return is read failed
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * Is this FRM probed or released (only header and frame records are
+     * available, frames are not loaded)
+     *
+     * @return is probed
+     */
+    public boolean isProbed() {
+        return source == null && frames.size() < frameHeaders.size();
+    }
+
+    /**
+     * Gets single frame. Frame of read FRM is decoded on each call (it's not
+     * kept in this FRM).
+     *
+     * @param index frame index
+     * @return frame image data
+     */
+    public ImageData getFrame(int index) {
+        if (index < frames.size()) {
+            return frames.get(index);
+        }
+        if (isProbed()) {
+            throw new IllegalStateException("Frames of probed (or released) FRM are not loaded!");
+        }
+        return decode(frameHeaders.get(index));
     }
 
     /**
@@ -217,82 +493,46 @@ public class FRM {
      * @param file to write binary FRM content to
      */
     public void write(File file) {
-        pos = 0x0000;
+        getFrames();
+        int size = HEADER_SIZE;
+        for (ImageData frame : frames) {
+            size += FRAME_HEADER_SIZE + frame.getWidth() * frame.getHeight();
+        }
+        ByteBuffer buffer = BufferPool.acquire(size);
         // big endian motorola
-        buffer[pos] = (byte) (version >> 24);
-        buffer[pos + 1] = (byte) (version >> 16);
-        buffer[pos + 2] = (byte) (version >> 8);
-        buffer[pos + 3] = (byte) (version);
-        pos += 4;
-        buffer[pos] = (byte) (fps >> 8);
-        buffer[pos + 1] = (byte) (fps);
-        pos += 2;
-        buffer[pos] = (byte) (actionFrame >> 8);
-        buffer[pos + 1] = (byte) (actionFrame);
-        pos += 2;
-        buffer[pos] = (byte) (framesPerDirection >> 8);
-        buffer[pos + 1] = (byte) (framesPerDirection);
-        pos += 2;
+        buffer.putInt(version);
+        buffer.putShort((short) fps);
+        buffer.putShort((short) actionFrame);
+        buffer.putShort((short) framesPerDirection);
         //----------------------------------------------------------------------                
         for (int i = 0; i < 6; i++) {
-            buffer[pos] = (byte) (shiftX[i] >> 8);
-            buffer[pos + 1] = (byte) (shiftX[i]);
-            pos += 2;
+            buffer.putShort((short) shiftX[i]);
         }
 
         for (int i = 0; i < 6; i++) {
-            buffer[pos] = (byte) (shiftY[i] >> 8);
-            buffer[pos + 1] = (byte) (shiftY[i]);
-            pos += 2;
+            buffer.putShort((short) shiftY[i]);
         }
         //----------------------------------------------------------------------        
         for (int i = 0; i < 6; i++) {
-            buffer[pos] = (byte) (offset[i] >> 24);
-            buffer[pos + 1] = (byte) (offset[i] >> 16);
-            buffer[pos + 2] = (byte) (offset[i] >> 8);
-            buffer[pos + 3] = (byte) (offset[i]);
-            pos += 4;
+            buffer.putInt(offset[i]);
         }
         //----------------------------------------------------------------------
-        buffer[pos] = (byte) (frameSize >> 24);
-        buffer[pos + 1] = (byte) (frameSize >> 16);
-        buffer[pos + 2] = (byte) (frameSize >> 8);
-        buffer[pos + 3] = (byte) (frameSize);
-        pos += 4;
+        buffer.putInt(frameSize);
         //----------------------------------------------------------------------
         for (ImageData frame : frames) {
-            int width = frame.getWidth();
-            buffer[pos] = (byte) (width >> 8);
-            buffer[pos + 1] = (byte) (width);
-            pos += 2;
-            int height = frame.getHeight();
-            buffer[pos] = (byte) (height >> 8);
-            buffer[pos + 1] = (byte) (height);
-            pos += 2;
+            buffer.putShort((short) frame.getWidth());
+            buffer.putShort((short) frame.getHeight());
             //--------------------------------------------------------------
-            final int area = frame.getWidth() * frame.getHeight();
-            buffer[pos] = (byte) (area >> 24);
-            buffer[pos + 1] = (byte) (area >> 16);
-            buffer[pos + 2] = (byte) (area >> 8);
-            buffer[pos + 3] = (byte) (area);
-            pos += 4;
-            final int offsetX = frame.getOffsetX();
-            buffer[pos] = (byte) (offsetX >> 8);
-            buffer[pos + 1] = (byte) (offsetX);
-            pos += 2;
-            final int offsetY = frame.getOffsetY();
-            buffer[pos] = (byte) (offsetY >> 8);
-            buffer[pos + 1] = (byte) (offsetY);
-            pos += 2;
+            buffer.putInt(frame.getWidth() * frame.getHeight());
+            buffer.putShort((short) frame.getOffsetX());
+            buffer.putShort((short) frame.getOffsetY());
             //--------------------------------------------------------------                
-            for (int py = 0; py < frame.getHeight(); py++) {
-                for (int px = 0; px < frame.getWidth(); px++) {
-                    buffer[pos++] = frame.getPixel(px, py);
-                }
-            }
+            buffer.put(frame.getData());
         }
+        buffer.flip();
 
-        storeToFile(file);
+        storeToFile(file, buffer);
+        BufferPool.release(buffer);
     }
 
     public int getVersion() {
@@ -327,8 +567,25 @@ public class FRM {
         return frameSize;
     }
 
+    /**
+     * Gets all the frames (decodes all the frames of read FRM and keeps them)
+     *
+     * @return list of frames
+     */
     public List<ImageData> getFrames() {
+        if (isProbed()) {
+            throw new IllegalStateException("Frames of probed (or released) FRM are not loaded!");
+        }
+        if (source != null && frames.size() < frameHeaders.size()) {
+            for (int i = frames.size(); i < frameHeaders.size(); i++) {
+                frames.add(decode(frameHeaders.get(i)));
+            }
+        }
         return frames;
     }
 
+    public List<FrameHeader> getFrameHeaders() {
+        return frameHeaders;
+    }
+
 }
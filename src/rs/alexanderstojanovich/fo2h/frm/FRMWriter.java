@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2021 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.fo2h.frm;
+
+import java.awt.Rectangle;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import rs.alexanderstojanovich.fo2h.util.FO2HLogger;
+
+/**
+ * Writes FRM file frame by frame. Header is written in front and patched
+ * with frame offsets and total frame size once all the frames are written,
+ * so frames don't have to be held in memory all at once.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class FRMWriter implements Closeable {
+
+    private final File file;
+    private final FileOutputStream fos;
+    private final FileChannel channel;
+
+    private final int version;
+    private final int fps;
+    private final int actionFrame;
+    private final int framesPerDirection;
+
+    private final int[] shiftX = new int[6];
+    private final int[] shiftY = new int[6];
+
+    private final int[] offset = new int[6];
+
+    private int frameSize = 0;
+    private int frameCount = 0;
+    private int direction = 0;
+
+    // frames are cropped to their opaque bounds
+    private boolean trim = false;
+    // displacement of previous trimmed frame (bottom center)
+    private int trimX = 0;
+    private int trimY = 0;
+
+    private final ByteBuffer header = ByteBuffer.allocate(FRM.HEADER_SIZE);
+    private final ByteBuffer frameHeader = ByteBuffer.allocate(FRM.FRAME_HEADER_SIZE);
+
+    /**
+     * Creates new FRM writer (file is overwritten)
+     *
+     * @param file FRM file to write to
+     * @param version version number of the FRM file format
+     * @param fps frames per second rate of the animation
+     * @param actionFrame frame of the animation on which actions occur
+     * @param framesPerDirection number of frames for a particular orientation
+     * @param shiftX required X shift array
+     * @param shiftY required Y shift array
+     * @throws IOException if file cannot be opened
+     */
+    public FRMWriter(File file, int version, int fps, int actionFrame, int framesPerDirection,
+            int[] shiftX, int[] shiftY) throws IOException {
+        this.version = version;
+        this.fps = fps;
+        this.actionFrame = actionFrame;
+        this.framesPerDirection = framesPerDirection;
+        System.arraycopy(shiftX, 0, this.shiftX, 0, 6);
+        System.arraycopy(shiftY, 0, this.shiftY, 0, 6);
+        this.file = file;
+        if (file.exists()) {
+            file.delete();
+        }
+        this.fos = new FileOutputStream(file);
+        this.channel = fos.getChannel();
+        // placeholder, written again on close
+        fillHeader();
+        write(header);
+    }
+
+    private void fillHeader() {
+        header.clear();
+        // big endian motorola
+        header.putInt(version);
+        header.putShort((short) fps);
+        header.putShort((short) actionFrame);
+        header.putShort((short) framesPerDirection);
+        //----------------------------------------------------------------------
+        for (int i = 0; i < 6; i++) {
+            header.putShort((short) shiftX[i]);
+        }
+
+        for (int i = 0; i < 6; i++) {
+            header.putShort((short) shiftY[i]);
+        }
+        //----------------------------------------------------------------------
+        for (int i = 0; i < 6; i++) {
+            header.putInt(offset[i]);
+        }
+        //----------------------------------------------------------------------
+        header.putInt(frameSize);
+        header.flip();
+    }
+
+    private void write(ByteBuffer... buffers) throws IOException {
+        long remaining = 0L;
+        for (ByteBuffer buffer : buffers) {
+            remaining += buffer.remaining();
+        }
+        while (remaining > 0L) {
+            remaining -= channel.write(buffers);
+        }
+    }
+
+    /**
+     * Write next frame (header and pixels are written together).
+     *
+     * @param frame frame to write
+     * @throws IOException if writing fails
+     */
+    public void writeFrame(ImageData frame) throws IOException {
+        final boolean first = direction < 6 && frameCount == direction * framesPerDirection;
+        if (first) {
+            offset[direction++] = frameSize;
+        }
+        if (trim) {
+            frame = trim(frame, first);
+        }
+        final int area = frame.getWidth() * frame.getHeight();
+        frameHeader.clear();
+        frameHeader.putShort((short) frame.getWidth());
+        frameHeader.putShort((short) frame.getHeight());
+        frameHeader.putInt(area);
+        frameHeader.putShort((short) frame.getOffsetX());
+        frameHeader.putShort((short) frame.getOffsetY());
+        frameHeader.flip();
+        write(frameHeader, ByteBuffer.wrap(frame.getData(), 0, area));
+        frameSize += FRM.FRAME_HEADER_SIZE + area;
+        frameCount++;
+    }
+
+    /**
+     * Crops frame to its opaque bounds. Frame is anchored at its bottom
+     * center, so the anchor displacement is compensated by the shift of the
+     * direction (first frame) or by the frame offset (other frames, offsets
+     * are relative to the previous frame). Every pixel stays on the same
+     * screen position.
+     *
+     * @param frame frame to trim
+     * @param first is frame first in its direction
+     * @return trimmed frame
+     */
+    private ImageData trim(ImageData frame, boolean first) {
+        Rectangle bounds = frame.getOpaqueBounds();
+        if (bounds.isEmpty()) {
+            // nothing to trim, frame is kept as is
+            bounds = new Rectangle(0, 0, frame.getWidth(), frame.getHeight());
+        }
+        final int dx = bounds.x + bounds.width / 2 - frame.getWidth() / 2;
+        final int dy = bounds.y + bounds.height - frame.getHeight();
+        int offsetX = frame.getOffsetX();
+        int offsetY = frame.getOffsetY();
+        if (first) {
+            shiftX[direction - 1] += dx;
+            shiftY[direction - 1] += dy;
+        } else {
+            offsetX += dx - trimX;
+            offsetY += dy - trimY;
+        }
+        trimX = dx;
+        trimY = dy;
+        return frame.crop(bounds, offsetX, offsetY);
+    }
+
+    /**
+     * Writes final header (with frame offsets and frame size) and closes the
+     * file.
+     *
+     * @throws IOException if writing fails
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            fillHeader();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        } finally {
+            fos.close();
+        }
+    }
+
+    /**
+     * Closes the file without writing the final header and deletes it (so
+     * no truncated FRM is left if writing of frames failed).
+     */
+    public void abort() {
+        try {
+            fos.close();
+        } catch (IOException ex) {
+            FO2HLogger.reportError(ex.getMessage(), ex);
+        }
+        file.delete();
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public boolean isTrim() {
+        return trim;
+    }
+
+    /**
+     * Sets whether frames are cropped to their opaque bounds (set before the
+     * first frame is written).
+     *
+     * @param trim trim frames
+     */
+    public void setTrim(boolean trim) {
+        this.trim = trim;
+    }
+
+}
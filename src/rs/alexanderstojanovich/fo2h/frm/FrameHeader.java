@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2021 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.fo2h.frm;
+
+/**
+ * Frame record of the FRM (dimension, offset and where frame pixels are).
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class FrameHeader {
+
+    private final int width;
+    private final int height;
+
+    private final int offsetX;
+    private final int offsetY;
+
+    // position of frame pixels in the FRM file
+    private final int dataPos;
+
+    /**
+     * Creates new frame header
+     *
+     * @param width width of the frame
+     * @param height height of the frame
+     * @param offsetX frame offset in X direction
+     * @param offsetY frame offset in Y direction
+     * @param dataPos position of frame pixels in the FRM file
+     */
+    public FrameHeader(int width, int height, int offsetX, int offsetY, int dataPos) {
+        this.width = width;
+        this.height = height;
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+        this.dataPos = dataPos;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getOffsetX() {
+        return offsetX;
+    }
+
+    public int getOffsetY() {
+        return offsetY;
+    }
+
+    public int getDataPos() {
+        return dataPos;
+    }
+
+}
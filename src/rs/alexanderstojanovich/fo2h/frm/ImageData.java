@@ -16,8 +16,12 @@
  */
 package rs.alexanderstojanovich.fo2h.frm;
 
-import java.awt.Color;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
 
 /**
  *
@@ -60,34 +64,35 @@ public class ImageData {
      * @param offsetY frame offset in Y direction
      */
     public ImageData(BufferedImage image, int offsetX, int offsetY) {
+        this(image, offsetX, offsetY, new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+    }
+
+    /**
+     * Creates new image data from image (converts image to indexed then writes
+     * to the data). Only pixels in the given region are converted, others are
+     * transparent.
+     *
+     * @param image original image to get the data from
+     * @param offsetX frame offset in X direction
+     * @param offsetY frame offset in Y direction
+     * @param region region of the image which has non-transparent pixels
+     */
+    public ImageData(BufferedImage image, int offsetX, int offsetY, Rectangle region) {
         this.width = image.getWidth();
         this.height = image.getHeight();
         this.data = new byte[width * height];
-        for (int px = 0; px < width; px++) {
-            for (int py = 0; py < height; py++) {
-                int e = width * py + px;
-                int rgb = image.getRGB(px, py);
-                byte index = 0;
-                Color col = new Color(rgb, true);
-                if (col.getAlpha() != 0) {
-                    int minDeviation = 255 * 1000;
-                    int minIndex = -1;
-                    for (int rgbi : Palette.getColors()) {
-                        Color coli = new Color(rgbi);
-                        int deviation = 299 * Math.abs(col.getRed() - coli.getRed())
-                                + 587 * Math.abs(col.getGreen() - coli.getGreen())
-                                + 114 * Math.abs(col.getBlue() - coli.getBlue());
-                        if (deviation < minDeviation) {
-                            minDeviation = deviation;
-                            minIndex = index;
-                            if (deviation == 0) {
-                                break;
-                            }
-                        }
-                        index++;
+        // nearest palette entry of each color
+        final byte[] lookup = Palette.getLookup();
+        final Rectangle bounds = region.intersection(new Rectangle(0, 0, width, height));
+        if (!bounds.isEmpty()) {
+            int[] row = new int[bounds.width];
+            for (int py = bounds.y; py < bounds.y + bounds.height; py++) {
+                image.getRGB(bounds.x, py, bounds.width, 1, row, 0, bounds.width);
+                for (int i = 0; i < bounds.width; i++) {
+                    int rgb = row[i];
+                    if ((rgb >>> 24) != 0) {
+                        data[width * py + bounds.x + i] = lookup[rgb & 0xFFFFFF];
                     }
-
-                    data[e] = (byte) minIndex;
                 }
             }
         }
@@ -119,22 +124,86 @@ public class ImageData {
         return data[e];
     }
 
+    /**
+     * Gets bounding box of non-transparent pixels (other than index 0).
+     *
+     * @return opaque bounds (empty if all the pixels are transparent)
+     */
+    public Rectangle getOpaqueBounds() {
+        int minX = width;
+        int maxX = -1;
+        int minY = -1;
+        int maxY = -1;
+        for (int py = 0; py < height; py++) {
+            final int row = py * width;
+            int first = 0;
+            while (first < width && data[row + first] == 0) {
+                first++;
+            }
+            if (first == width) {
+                continue;
+            }
+            int last = width - 1;
+            while (data[row + last] == 0) {
+                last--;
+            }
+            if (minY == -1) {
+                minY = py;
+            }
+            maxY = py;
+            minX = Math.min(minX, first);
+            maxX = Math.max(maxX, last);
+        }
+        if (maxY == -1) {
+            return new Rectangle();
+        }
+        return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+    }
+
+    /**
+     * Copies region of this image data into new image data.
+     *
+     * @param region region to copy (must be within the image)
+     * @param offsetX frame offset in X direction of the copy
+     * @param offsetY frame offset in Y direction of the copy
+     * @return image data of the region
+     */
+    public ImageData crop(Rectangle region, int offsetX, int offsetY) {
+        ImageData result = new ImageData(region.width, region.height, offsetX, offsetY);
+        for (int py = 0; py < region.height; py++) {
+            System.arraycopy(data, width * (region.y + py) + region.x, result.data, region.width * py, region.width);
+        }
+        return result;
+    }
+
     /**
      * Makes Buffered Image based on preloaded Palette and pixel data
      *
-     * @return Buffered Image with this pixel data.
+     * @return Buffered Image with this pixel data (ARGB copy).
      */
     public BufferedImage toBufferedImage() {
         BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-        for (int px = 0; px < width; px++) {
-            for (int py = 0; py < height; py++) {
-                int e = width * py + px;
-                result.setRGB(px, py, Palette.getColors()[data[e] & 0xFF]);
-            }
+        final int[] pixels = ((DataBufferInt) result.getRaster().getDataBuffer()).getData();
+        final int[] colors = Palette.getColors();
+        for (int e = 0; e < pixels.length; e++) {
+            pixels[e] = colors[data[e] & 0xFF];
         }
         return result;
     }
 
+    /**
+     * Makes indexed Buffered Image based on preloaded Palette. Image is backed
+     * by the pixel data of this (not copied), so changes of one are visible in
+     * the other.
+     *
+     * @return indexed Buffered Image with this pixel data.
+     */
+    public BufferedImage toIndexedImage() {
+        WritableRaster raster = Raster.createInterleavedRaster(new DataBufferByte(data, data.length),
+                width, height, width, 1, new int[]{0}, null);
+        return new BufferedImage(Palette.getColorModel(), raster, false, null);
+    }
+
     public int getWidth() {
         return width;
     }
@@ -17,8 +17,14 @@
 package rs.alexanderstojanovich.fo2h.frm;
 
 import java.awt.Color;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import rs.alexanderstojanovich.fo2h.highlighter.GUI;
 import rs.alexanderstojanovich.fo2h.util.FO2HLogger;
 
@@ -34,6 +40,15 @@ public class Palette {
     private static byte colBuff[];
     // whether or not palette is loaded or not
     private static boolean loaded = false;
+    // indexed model of the palette (index 0 - transparent)
+    private static IndexColorModel colorModel;
+    // nearest palette index for each RGB color (built on first use)
+    private static byte lookup[];
+    // file where lookup is persisted (null - not persisted)
+    private static File lookupCache;
+
+    // size of the lookup (all 24-bit RGB colors)
+    public static final int LOOKUP_SIZE = 1 << 24;
 
     //--------------------------------------------------------------------------
     // A - STATIC METHODS
@@ -45,6 +60,7 @@ public class Palette {
      */
     public static void load(String fileName) {
         loaded = false;
+        lookup = null;
         InputStream in = Palette.class.getResourceAsStream(GUI.RESOURCES_DIR + fileName);
         byte[] buff = null;
         if (in != null) {
@@ -70,6 +86,7 @@ public class Palette {
                 colBuff[4 * index + 3] = (byte) col.getAlpha();
                 index++;
             }
+            colorModel = new IndexColorModel(8, 256, colors, 0, true, -1, DataBuffer.TYPE_BYTE);
             loaded = true;
             FO2HLogger.reportInfo("Palette Initialized!", null);
         }
@@ -82,27 +99,191 @@ public class Palette {
      * @return best matching color
      */
     public static Color substitute(Color color) {
-        Color col = new Color(color.getRGB(), false);
-        int minDeviation = 255 * 1000;
-        int minIndex = -1;
-        int index = 0;
-        for (int rgbi : Palette.getColors()) {
-            Color coli = new Color(rgbi);
-            int deviation = 299 * Math.abs(col.getRed() - coli.getRed())
-                    + 587 * Math.abs(col.getGreen() - coli.getGreen())
-                    + 114 * Math.abs(col.getBlue() - coli.getBlue());
-            if (deviation < minDeviation) {
-                minDeviation = deviation;
-                minIndex = index;
-                if (deviation == 0) {
-                    break;
+        if (colors == null) {
+            return null;
+        }
+        final int index = getLookup()[color.getRGB() & 0xFFFFFF] & 0xFF;
+        return new Color(colors[index]);
+    }
+
+    /**
+     * Gets nearest palette index of each RGB color (index is 0xRRGGBB). Color
+     * deviation is 299 * |dR| + 587 * |dG| + 114 * |dB|, on equal deviation
+     * lower palette index wins. Lookup is built on first call (or read from
+     * the lookup cache file if it's set).
+     *
+     * @return lookup with palette indices (null if palette is not loaded)
+     */
+    public static synchronized byte[] getLookup() {
+        if (lookup == null && colors != null) {
+            if (lookupCache != null) {
+                lookup = readLookup(lookupCache);
+            }
+            if (lookup == null) {
+                long beginTime = System.currentTimeMillis();
+                lookup = buildLookup();
+                FO2HLogger.reportInfo("Palette lookup built in " + (System.currentTimeMillis() - beginTime) + " ms", null);
+                if (lookupCache != null) {
+                    writeLookup(lookupCache, lookup);
+                }
+            }
+        }
+        return lookup;
+    }
+
+    /**
+     * Builds the lookup. Each thread takes every n-th red component.
+     *
+     * @return built lookup
+     */
+    private static byte[] buildLookup() {
+        final byte[] result = new byte[LOOKUP_SIZE];
+        final int nThreads = Runtime.getRuntime().availableProcessors();
+        Thread[] threads = new Thread[nThreads];
+        for (int t = 0; t < nThreads; t++) {
+            final int first = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int red = first; red < 256; red += nThreads) {
+                        buildLookup(result, red);
+                    }
+                }
+            }, "FO2H-Palette-" + t);
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException ex) {
+                FO2HLogger.reportError(ex.getMessage(), ex);
+                Thread.currentThread().interrupt();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Builds part of the lookup for colors with given red component. For each
+     * green component palette entries are sorted by red & green deviation so
+     * search for blue components stops as soon as that partial deviation
+     * alone can't beat the best match.
+     *
+     * @param result lookup to fill
+     * @param red red component
+     */
+    private static void buildLookup(byte[] result, int red) {
+        final int[] keys = new int[256];
+        for (int green = 0; green < 256; green++) {
+            for (int i = 0; i < 256; i++) {
+                int partial = 299 * Math.abs(red - ((colors[i] >> 16) & 0xFF))
+                        + 587 * Math.abs(green - ((colors[i] >> 8) & 0xFF));
+                // partial deviation first, then palette index
+                keys[i] = (partial << 8) | i;
+            }
+            Arrays.sort(keys);
+            final int base = (red << 16) | (green << 8);
+            for (int blue = 0; blue < 256; blue++) {
+                int minDeviation = Integer.MAX_VALUE;
+                int minIndex = 0;
+                for (int key : keys) {
+                    int partial = key >>> 8;
+                    if (partial > minDeviation) {
+                        break;
+                    }
+                    int i = key & 0xFF;
+                    int deviation = partial + 114 * Math.abs(blue - (colors[i] & 0xFF));
+                    if (deviation < minDeviation || (deviation == minDeviation && i < minIndex)) {
+                        minDeviation = deviation;
+                        minIndex = i;
+                    }
+                }
+                result[base | blue] = (byte) minIndex;
+            }
+        }
+    }
+
+    /**
+     * Reads persisted lookup. File holds palette colors (RGB, 768 bytes)
+     * followed by the lookup. Lookup of different palette is not accepted.
+     *
+     * @param file lookup cache file
+     * @return lookup (null if file doesn't exist or doesn't match)
+     */
+    private static byte[] readLookup(File file) {
+        if (!file.exists() || file.length() != 768 + LOOKUP_SIZE) {
+            return null;
+        }
+        byte[] result = null;
+        FileInputStream fis = null;
+        try {
+            fis = new FileInputStream(file);
+            byte[] rgb = new byte[768];
+            readFully(fis, rgb);
+            if (Arrays.equals(rgb, getRGBBytes())) {
+                result = new byte[LOOKUP_SIZE];
+                readFully(fis, result);
+            }
+        } catch (IOException ex) {
+            FO2HLogger.reportError(ex.getMessage(), ex);
+            result = null;
+        } finally {
+            if (fis != null) {
+                try {
+                    fis.close();
+                } catch (IOException ex) {
+                    FO2HLogger.reportError(ex.getMessage(), ex);
                 }
             }
-            index++;
+        }
+        return result;
+    }
 
+    private static void readFully(InputStream in, byte[] buff) throws IOException {
+        int total = 0;
+        while (total < buff.length) {
+            int n = in.read(buff, total, buff.length - total);
+            if (n == -1) {
+                throw new IOException("Unexpected end of the lookup cache!");
+            }
+            total += n;
+        }
+    }
+
+    /**
+     * Persists the lookup (preceded by the palette colors).
+     *
+     * @param file lookup cache file
+     * @param lookup lookup to persist
+     */
+    private static void writeLookup(File file, byte[] lookup) {
+        FileOutputStream fos = null;
+        try {
+            fos = new FileOutputStream(file);
+            fos.write(getRGBBytes());
+            fos.write(lookup);
+        } catch (IOException ex) {
+            FO2HLogger.reportError(ex.getMessage(), ex);
+        } finally {
+            if (fos != null) {
+                try {
+                    fos.close();
+                } catch (IOException ex) {
+                    FO2HLogger.reportError(ex.getMessage(), ex);
+                }
+            }
         }
+    }
 
-        return (minIndex == -1) ? null : new Color(Palette.getColors()[minIndex]);
+    // palette colors as RGB triplets
+    private static byte[] getRGBBytes() {
+        byte[] rgb = new byte[768];
+        for (int i = 0; i < 256; i++) {
+            rgb[3 * i] = colBuff[4 * i];
+            rgb[3 * i + 1] = colBuff[4 * i + 1];
+            rgb[3 * i + 2] = colBuff[4 * i + 2];
+        }
+        return rgb;
     }
 
     /**
@@ -112,6 +293,8 @@ public class Palette {
         loaded = false;
         colors = null;
         colBuff = null;
+        colorModel = null;
+        lookup = null;
     }
 
     //--------------------------------------------------------------------------
@@ -130,7 +313,24 @@ public class Palette {
         return colBuff;
     }
 
+    public static IndexColorModel getColorModel() {
+        return colorModel;
+    }
+
     public static boolean isLoaded() {
         return loaded;
     }
+
+    public static File getLookupCache() {
+        return lookupCache;
+    }
+
+    /**
+     * Sets file where palette lookup is persisted
+     *
+     * @param lookupCache lookup cache file (null - lookup is not persisted)
+     */
+    public static void setLookupCache(File lookupCache) {
+        Palette.lookupCache = lookupCache;
+    }
 }
@@ -0,0 +1,307 @@
+/*
+ * Copyright (C) 2021 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.fo2h.frm;
+
+import java.awt.Rectangle;
+
+/**
+ * Compact (run length encoded) image data. Only spans of non-transparent
+ * pixels (other than index 0) are kept, transparent runs are collapsed.
+ * Spans are visited with the cursor, so effect kernels skip transparent runs
+ * in constant time. Frames which wouldn't get smaller by encoding (many short
+ * spans) are kept dense, then cursor gives one full width span per row.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class RLEImageData {
+
+    private final int width;
+    private final int height;
+
+    private final int offsetX;
+    private final int offsetY;
+
+    // spans of the row py are rowSpans[py] .. rowSpans[py + 1] - 1
+    private final int[] rowSpans;
+    // x coordinate of each span
+    private final int[] spanX;
+    // position of span pixels in data (one more for the end of the last)
+    private final int[] spanPos;
+    // pixels of all the spans (all the pixels if dense)
+    private final byte[] data;
+    // data is not encoded (span arrays are null)
+    private final boolean dense;
+    // not encoded frame (null if encoded), data are its pixels
+    private final ImageData denseFrame;
+
+    /**
+     * Creates compact image data from (dense) image data
+     *
+     * @param imageData image data to encode
+     */
+    public RLEImageData(ImageData imageData) {
+        this(imageData.getData(), imageData.getWidth(), imageData.getHeight(), imageData.getOffsetX(), imageData.getOffsetY());
+    }
+
+    /**
+     * Creates compact image data from pixels (palette entries)
+     *
+     * @param pixels pixels (row major)
+     * @param width width of the pixel area
+     * @param height height of the pixel area
+     * @param offsetX frame offset in X direction
+     * @param offsetY frame offset in Y direction
+     */
+    public RLEImageData(byte[] pixels, int width, int height, int offsetX, int offsetY) {
+        this.width = width;
+        this.height = height;
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+        // count spans and their pixels first (so arrays are exact size)
+        int spans = 0;
+        int opaque = 0;
+        for (int py = 0; py < height; py++) {
+            final int row = py * width;
+            for (int px = 0; px < width; px++) {
+                if (pixels[row + px] != 0) {
+                    if (px == 0 || pixels[row + px - 1] == 0) {
+                        spans++;
+                    }
+                    opaque++;
+                }
+            }
+        }
+        // encoding doesn't pay off, pixels are kept as they are
+        if (encodedSize(spans, height, opaque) >= (long) width * height) {
+            this.dense = true;
+            this.rowSpans = null;
+            this.spanX = null;
+            this.spanPos = null;
+            this.denseFrame = new ImageData(width, height, offsetX, offsetY);
+            this.data = denseFrame.getData();
+            System.arraycopy(pixels, 0, data, 0, data.length);
+            return;
+        }
+        this.dense = false;
+        this.denseFrame = null;
+        this.rowSpans = new int[height + 1];
+        this.spanX = new int[spans];
+        this.spanPos = new int[spans + 1];
+        this.data = new byte[opaque];
+        int span = 0;
+        int pos = 0;
+        for (int py = 0; py < height; py++) {
+            rowSpans[py] = span;
+            final int row = py * width;
+            int px = 0;
+            while (px < width) {
+                if (pixels[row + px] == 0) {
+                    px++;
+                    continue;
+                }
+                spanX[span] = px;
+                spanPos[span] = pos;
+                while (px < width && pixels[row + px] != 0) {
+                    data[pos++] = pixels[row + px++];
+                }
+                span++;
+            }
+        }
+        rowSpans[height] = span;
+        spanPos[span] = pos;
+    }
+
+    /**
+     * Gets size of the encoded pixels in bytes (spans, row index and pixels)
+     *
+     * @param spans number of spans
+     * @param height number of rows
+     * @param opaque number of non-transparent pixels
+     * @return encoded size
+     */
+    private static long encodedSize(int spans, int height, int opaque) {
+        return 8L * spans + 4L * (height + 1) + opaque;
+    }
+
+    /**
+     * Decodes into (dense) image data
+     *
+     * @return image data
+     */
+    public ImageData toImageData() {
+        ImageData result = new ImageData(width, height, offsetX, offsetY);
+        final byte[] dst = result.getData();
+        if (dense) {
+            System.arraycopy(data, 0, dst, 0, data.length);
+            return result;
+        }
+        Cursor cursor = cursor();
+        while (cursor.next()) {
+            System.arraycopy(data, cursor.getDataPos(), dst, cursor.getY() * width + cursor.getX(), cursor.getLength());
+        }
+        return result;
+    }
+
+    /**
+     * Gets bounding box of non-transparent pixels.
+     *
+     * @return opaque bounds (empty if all the pixels are transparent)
+     */
+    public Rectangle getOpaqueBounds() {
+        if (dense) {
+            return denseFrame.getOpaqueBounds();
+        }
+        int minX = width;
+        int maxX = -1;
+        int minY = -1;
+        int maxY = -1;
+        Cursor cursor = cursor();
+        while (cursor.next()) {
+            if (minY == -1) {
+                minY = cursor.getY();
+            }
+            maxY = cursor.getY();
+            minX = Math.min(minX, cursor.getX());
+            maxX = Math.max(maxX, cursor.getX() + cursor.getLength() - 1);
+        }
+        if (maxY == -1) {
+            return new Rectangle();
+        }
+        return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+    }
+
+    /**
+     * Gets new cursor positioned before the first span
+     *
+     * @return span cursor
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Cursor over the spans (row by row, left to right).
+     */
+    public class Cursor {
+
+        private int row = 0;
+        private int span = -1;
+
+        /**
+         * Moves to the next span
+         *
+         * @return is there next span
+         */
+        public boolean next() {
+            if (dense) {
+                // one span per row
+                span++;
+                row = span;
+                return row < height;
+            }
+            span++;
+            while (row < height && span >= rowSpans[row + 1]) {
+                row++;
+            }
+            return row < height;
+        }
+
+        /**
+         * Gets x coordinate of the first pixel of the span
+         *
+         * @return x coordinate
+         */
+        public int getX() {
+            if (dense) {
+                return 0;
+            }
+            return spanX[span];
+        }
+
+        /**
+         * Gets row of the span
+         *
+         * @return y coordinate
+         */
+        public int getY() {
+            return row;
+        }
+
+        /**
+         * Gets number of pixels in the span
+         *
+         * @return span length
+         */
+        public int getLength() {
+            if (dense) {
+                return width;
+            }
+            return spanPos[span + 1] - spanPos[span];
+        }
+
+        /**
+         * Gets position of the span pixels in the data
+         *
+         * @return position in data
+         */
+        public int getDataPos() {
+            if (dense) {
+                return row * width;
+            }
+            return spanPos[span];
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getOffsetX() {
+        return offsetX;
+    }
+
+    public int getOffsetY() {
+        return offsetY;
+    }
+
+    public int getSpanCount() {
+        return dense ? height : spanX.length;
+    }
+
+    /**
+     * Is data kept dense (not encoded)
+     *
+     * @return is dense
+     */
+    public boolean isDense() {
+        return dense;
+    }
+
+    /**
+     * Gets pixels of all the spans (position of each is given by the cursor)
+     *
+     * @return span pixels
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+}
@@ -0,0 +1,352 @@
+/*
+ * Copyright (C) 2021 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.fo2h.highlighter;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import rs.alexanderstojanovich.fo2h.util.FO2HLogger;
+
+/**
+ * Manifest of the output directory. For each source file (path relative to
+ * the input directory) records hash of the content, dictionary rule, color
+ * and label the output was produced with and hash of the other settings, so
+ * on the next run only files with changed content or resolved style are
+ * processed. Size and modification time are recorded too, so content of
+ * untouched files is not hashed again. Entry of this run is saved only if it's
+ * committed (output is written), otherwise entry of the previous run is kept.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class BuildManifest {
+
+    public static final String FILE_NAME = "fo2_highlighter.manifest";
+    // increased when the same input and style give different output
+    public static final int VERSION = 2;
+
+    private static final String HEADER = "# FO2 Highlighter manifest v";
+
+    /**
+     * Recorded state of single source file.
+     */
+    public static class Entry {
+
+        private final String contentHash;
+        private final long size;
+        private final long lastModified;
+        // dictionary rule (predefined object, custom or unused)
+        private final String rule;
+        // effective item color (hex ARGB)
+        private final String color;
+        // label text (empty if not labeled)
+        private final String label;
+        // hash of the other settings (outline, fill, font..)
+        private final String styleHash;
+
+        public Entry(String contentHash, long size, long lastModified, String rule, String color, String label, String styleHash) {
+            this.contentHash = contentHash;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.rule = rule;
+            this.color = color;
+            this.label = label;
+            this.styleHash = styleHash;
+        }
+
+        public String getContentHash() {
+            return contentHash;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public String getRule() {
+            return rule;
+        }
+
+        public String getColor() {
+            return color;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public String getStyleHash() {
+            return styleHash;
+        }
+
+        /**
+         * Tells what differs from the other entry (size and modification
+         * time don't matter, only content does).
+         *
+         * @param other entry to compare with (null - file is new)
+         * @return names of the changed parts, empty if output is the same
+         */
+        public List<String> getChanges(Entry other) {
+            final List<String> changes = new ArrayList<>();
+            if (other == null) {
+                changes.add("new");
+                return changes;
+            }
+            if (!contentHash.equals(other.contentHash)) {
+                changes.add("content");
+            }
+            if (!rule.equals(other.rule)) {
+                changes.add("rule");
+            }
+            if (!color.equals(other.color)) {
+                changes.add("color");
+            }
+            if (!label.equals(other.label)) {
+                changes.add("label");
+            }
+            if (!styleHash.equals(other.styleHash)) {
+                changes.add("style");
+            }
+            return changes;
+        }
+
+    }
+
+    private final File file;
+    // entries of the previous run
+    private final Map<String, Entry> previous = new LinkedHashMap<>();
+    // entries of this run
+    private final Map<String, Entry> current = new LinkedHashMap<>();
+    // paths of this run which output is written
+    private final Set<String> committed = new HashSet<>();
+
+    /**
+     * Creates new manifest (previous entries are read with load).
+     *
+     * @param file manifest file
+     */
+    public BuildManifest(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads entries of the previous run. Manifest of other version is
+     * ignored.
+     */
+    public synchronized void load() {
+        previous.clear();
+        if (!file.exists()) {
+            return;
+        }
+        BufferedReader br = null;
+        try {
+            br = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+            String line = br.readLine();
+            if (line == null || !line.equals(HEADER + VERSION)) {
+                return;
+            }
+            while ((line = br.readLine()) != null) {
+                // tab separated, path is the last
+                String[] words = line.split("\t", 8);
+                if (words.length == 8) {
+                    previous.put(words[7], new Entry(words[0], Long.parseLong(words[1]), Long.parseLong(words[2]),
+                            words[3], words[4], words[5], words[6]));
+                }
+            }
+        } catch (NumberFormatException ex) {
+            // damaged manifest, everything is processed again
+            previous.clear();
+            FO2HLogger.reportError(ex.getMessage(), ex);
+        } catch (IOException ex) {
+            FO2HLogger.reportError(ex.getMessage(), ex);
+        } finally {
+            if (br != null) {
+                try {
+                    br.close();
+                } catch (IOException ex) {
+                    FO2HLogger.reportError(ex.getMessage(), ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes committed entries of this run, for files which output is not
+     * written entries of the previous run (files not seen in this run are
+     * dropped).
+     */
+    public synchronized void save() {
+        PrintWriter pw = null;
+        try {
+            pw = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+            pw.println(HEADER + VERSION);
+            for (Map.Entry<String, Entry> e : current.entrySet()) {
+                final Entry entry = committed.contains(e.getKey()) ? e.getValue() : previous.get(e.getKey());
+                if (entry == null) {
+                    continue;
+                }
+                pw.println(entry.contentHash + "\t" + entry.size + "\t" + entry.lastModified + "\t"
+                        + entry.rule + "\t" + entry.color + "\t" + entry.label + "\t" + entry.styleHash + "\t" + e.getKey());
+            }
+        } catch (IOException ex) {
+            FO2HLogger.reportError(ex.getMessage(), ex);
+        } finally {
+            if (pw != null) {
+                pw.close();
+            }
+        }
+    }
+
+    /**
+     * Records entry of the source file in this run (it's saved once it's
+     * committed).
+     *
+     * @param path source path relative to the input directory
+     * @param entry state of the source file
+     * @return what changed since the previous run (empty if nothing)
+     */
+    public synchronized List<String> put(String path, Entry entry) {
+        current.put(path, entry);
+        return entry.getChanges(previous.get(path));
+    }
+
+    /**
+     * Commits entry of this run (output of the source file is written or it's
+     * unchanged).
+     *
+     * @param path source path relative to the input directory
+     */
+    public synchronized void commit(String path) {
+        if (current.containsKey(path)) {
+            committed.add(path);
+        }
+    }
+
+    /**
+     * Gets entry recorded in this run (committed or not).
+     *
+     * @param path source path relative to the input directory
+     * @return entry (null if it's not recorded)
+     */
+    public synchronized Entry getCurrent(String path) {
+        return current.get(path);
+    }
+
+    /**
+     * Gets content hash of the source file. If size and modification time
+     * are same as in the previous run recorded hash is used (file is not
+     * read).
+     *
+     * @param path source path relative to the input directory
+     * @param srcFile source file
+     * @return hex digest (null if file cannot be read)
+     */
+    public String getContentHash(String path, File srcFile) {
+        final Entry entry = getPrevious(path);
+        if (entry != null && entry.size == srcFile.length() && entry.lastModified == srcFile.lastModified()) {
+            return entry.contentHash;
+        }
+        return hashContent(srcFile);
+    }
+
+    /**
+     * Gets entry of the previous run.
+     *
+     * @param path source path relative to the input directory
+     * @return entry (null if file wasn't processed in the previous run)
+     */
+    public synchronized Entry getPrevious(String path) {
+        return previous.get(path);
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException ex) {
+            // every Java platform has MD5
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static String toHex(byte[] digest) {
+        StringBuilder sb = new StringBuilder(2 * digest.length);
+        for (byte b : digest) {
+            sb.append(Character.forDigit((b >>> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Hash of file content (MD5).
+     *
+     * @param file file to hash
+     * @return hex digest (null if file cannot be read)
+     */
+    public static String hashContent(File file) {
+        final MessageDigest digest = md5();
+        InputStream is = null;
+        try {
+            is = new FileInputStream(file);
+            final byte[] buffer = new byte[0x10000];
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                digest.update(buffer, 0, n);
+            }
+            return toHex(digest.digest());
+        } catch (IOException ex) {
+            FO2HLogger.reportError(ex.getMessage(), ex);
+            return null;
+        } finally {
+            if (is != null) {
+                try {
+                    is.close();
+                } catch (IOException ex) {
+                    FO2HLogger.reportError(ex.getMessage(), ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Hash of style description (MD5 of UTF-8 bytes).
+     *
+     * @param style style description
+     * @return hex digest
+     */
+    public static String hashStyle(String style) {
+        return toHex(md5().digest(style.getBytes(StandardCharsets.UTF_8)));
+    }
+
+}
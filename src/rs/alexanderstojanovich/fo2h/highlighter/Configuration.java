@@ -81,6 +81,48 @@ public class Configuration {
     private boolean recursive = false;
     private boolean forcePaletteColors = false;
 
+    // number of files processed in parallel (0 - one per available processor)
+    private int workerThreads = 0;
+
+    // staged (decode -> effect -> write) processing with bounded queues
+    private boolean pipelined = false;
+    private int decodeThreads = 1;
+    // number of effect threads (0 - one per available processor)
+    private int effectThreads = 0;
+    // number of write threads (they also apply effects on FRM frames)
+    private int writeThreads = 1;
+    // maximum number of jobs waiting between two stages
+    private int queueCapacity = 16;
+
+    // FRM effects are computed on palette indices (except labeled ones)
+    private boolean indexedEffects = true;
+    // ARGB effects are computed in single pass over the pixels
+    private boolean fusedEffects = true;
+    // outline width in pixels (1 - classic outline)
+    private int outlineWidth = 1;
+    // radius of glow around the outline (0 - no glow), glow is soft in PNG
+    // and hard in FRM (only pixels with blurred alpha of at least 128)
+    private int glowRadius = 0;
+    // FRM frames are kept run-length encoded between the stages
+    private boolean compactFrames = false;
+    // FRM frames are cropped to opaque pixels (offsets are adjusted)
+    private boolean trimFrames = false;
+    // FRM labels are drawn from glyph atlas on palette indices
+    private boolean bitmapLabels = false;
+
+    // unchanged source files (same content and style) are skipped
+    private boolean incrementalBuild = false;
+    // outline masks of FRMs are cached (recolor without decoding)
+    private boolean maskCache = false;
+    // source files with same content and style are processed once
+    private boolean deduplicate = false;
+
+    // FRMs of at least this size (in bytes) are memory mapped (-1 - never)
+    private int memoryMapThreshold = -1;
+
+    // file where palette lookup is persisted (empty - not persisted)
+    private String paletteLookupCache = "";
+
     private Color readRGB(String str) {
         String[] split = str.replaceAll("\\s+", "").trim().split("^\\(|,|\\)$");
         int red = Integer.parseInt(split[1]);
@@ -180,6 +222,60 @@ public class Configuration {
                             case "ForcePaletteColors":
                                 forcePaletteColors = Boolean.parseBoolean(words[1]);
                                 break;
+                            case "WorkerThreads":
+                                workerThreads = Integer.parseInt(words[1]);
+                                break;
+                            case "Pipelined":
+                                pipelined = Boolean.parseBoolean(words[1]);
+                                break;
+                            case "DecodeThreads":
+                                decodeThreads = Integer.parseInt(words[1]);
+                                break;
+                            case "EffectThreads":
+                                effectThreads = Integer.parseInt(words[1]);
+                                break;
+                            case "WriteThreads":
+                                writeThreads = Integer.parseInt(words[1]);
+                                break;
+                            case "QueueCapacity":
+                                queueCapacity = Integer.parseInt(words[1]);
+                                break;
+                            case "IndexedEffects":
+                                indexedEffects = Boolean.parseBoolean(words[1]);
+                                break;
+                            case "FusedEffects":
+                                fusedEffects = Boolean.parseBoolean(words[1]);
+                                break;
+                            case "OutlineWidth":
+                                outlineWidth = Integer.parseInt(words[1]);
+                                break;
+                            case "GlowRadius":
+                                glowRadius = Integer.parseInt(words[1]);
+                                break;
+                            case "CompactFrames":
+                                compactFrames = Boolean.parseBoolean(words[1]);
+                                break;
+                            case "TrimFrames":
+                                trimFrames = Boolean.parseBoolean(words[1]);
+                                break;
+                            case "BitmapLabels":
+                                bitmapLabels = Boolean.parseBoolean(words[1]);
+                                break;
+                            case "IncrementalBuild":
+                                incrementalBuild = Boolean.parseBoolean(words[1]);
+                                break;
+                            case "MaskCache":
+                                maskCache = Boolean.parseBoolean(words[1]);
+                                break;
+                            case "Deduplicate":
+                                deduplicate = Boolean.parseBoolean(words[1]);
+                                break;
+                            case "MemoryMapThreshold":
+                                memoryMapThreshold = Integer.parseInt(words[1]);
+                                break;
+                            case "PaletteLookupCache":
+                                paletteLookupCache = words[1].replaceAll("\"", "");
+                                break;
                         }
                     }
                 }
@@ -239,6 +335,25 @@ public class Configuration {
             pw.println("Recursive = " + recursive);
             pw.println("ForcePaletteColors = " + forcePaletteColors);
             pw.println();
+            pw.println("WorkerThreads = " + workerThreads);
+            pw.println("Pipelined = " + pipelined);
+            pw.println("DecodeThreads = " + decodeThreads);
+            pw.println("EffectThreads = " + effectThreads);
+            pw.println("WriteThreads = " + writeThreads);
+            pw.println("QueueCapacity = " + queueCapacity);
+            pw.println("IndexedEffects = " + indexedEffects);
+            pw.println("FusedEffects = " + fusedEffects);
+            pw.println("OutlineWidth = " + outlineWidth);
+            pw.println("GlowRadius = " + glowRadius);
+            pw.println("CompactFrames = " + compactFrames);
+            pw.println("TrimFrames = " + trimFrames);
+            pw.println("BitmapLabels = " + bitmapLabels);
+            pw.println("IncrementalBuild = " + incrementalBuild);
+            pw.println("MaskCache = " + maskCache);
+            pw.println("Deduplicate = " + deduplicate);
+            pw.println("MemoryMapThreshold = " + memoryMapThreshold);
+            pw.println("PaletteLookupCache = " + "\"" + paletteLookupCache + "\"");
+            pw.println();
             pw.println("LoadDictionaryOnStart = " + loadDictionaryOnStart);
         } catch (FileNotFoundException ex) {
             FO2HLogger.reportError(ex.getMessage(), ex);
@@ -466,4 +581,148 @@ public class Configuration {
         this.forcePaletteColors = forcePaletteColors;
     }
 
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    public void setWorkerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+    }
+
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
+
+    public int getDecodeThreads() {
+        return decodeThreads;
+    }
+
+    public void setDecodeThreads(int decodeThreads) {
+        this.decodeThreads = decodeThreads;
+    }
+
+    public int getEffectThreads() {
+        return effectThreads;
+    }
+
+    public void setEffectThreads(int effectThreads) {
+        this.effectThreads = effectThreads;
+    }
+
+    public int getWriteThreads() {
+        return writeThreads;
+    }
+
+    public void setWriteThreads(int writeThreads) {
+        this.writeThreads = writeThreads;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public boolean isIndexedEffects() {
+        return indexedEffects;
+    }
+
+    public void setIndexedEffects(boolean indexedEffects) {
+        this.indexedEffects = indexedEffects;
+    }
+
+    public boolean isFusedEffects() {
+        return fusedEffects;
+    }
+
+    public void setFusedEffects(boolean fusedEffects) {
+        this.fusedEffects = fusedEffects;
+    }
+
+    public int getOutlineWidth() {
+        return outlineWidth;
+    }
+
+    public void setOutlineWidth(int outlineWidth) {
+        this.outlineWidth = outlineWidth;
+    }
+
+    public int getGlowRadius() {
+        return glowRadius;
+    }
+
+    public void setGlowRadius(int glowRadius) {
+        this.glowRadius = glowRadius;
+    }
+
+    public boolean isCompactFrames() {
+        return compactFrames;
+    }
+
+    public void setCompactFrames(boolean compactFrames) {
+        this.compactFrames = compactFrames;
+    }
+
+    public boolean isTrimFrames() {
+        return trimFrames;
+    }
+
+    public void setTrimFrames(boolean trimFrames) {
+        this.trimFrames = trimFrames;
+    }
+
+    public boolean isBitmapLabels() {
+        return bitmapLabels;
+    }
+
+    public void setBitmapLabels(boolean bitmapLabels) {
+        this.bitmapLabels = bitmapLabels;
+    }
+
+    public boolean isIncrementalBuild() {
+        return incrementalBuild;
+    }
+
+    public void setIncrementalBuild(boolean incrementalBuild) {
+        this.incrementalBuild = incrementalBuild;
+    }
+
+    public boolean isMaskCache() {
+        return maskCache;
+    }
+
+    public void setMaskCache(boolean maskCache) {
+        this.maskCache = maskCache;
+    }
+
+    public boolean isDeduplicate() {
+        return deduplicate;
+    }
+
+    public void setDeduplicate(boolean deduplicate) {
+        this.deduplicate = deduplicate;
+    }
+
+    public int getMemoryMapThreshold() {
+        return memoryMapThreshold;
+    }
+
+    public void setMemoryMapThreshold(int memoryMapThreshold) {
+        this.memoryMapThreshold = memoryMapThreshold;
+    }
+
+    public String getPaletteLookupCache() {
+        return paletteLookupCache;
+    }
+
+    public void setPaletteLookupCache(String paletteLookupCache) {
+        this.paletteLookupCache = paletteLookupCache;
+    }
+
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2021 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.fo2h.highlighter;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * Blue removal, outline and fill interior effect in single (row major) pass
+ * over the pixels of ARGB image. Gives the same image as
+ * {@link Highligther#removeBlue(BufferedImage)} followed by
+ * {@link Highligther#createOutline(BufferedImage, Color, boolean, boolean)}.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class FusedKernel {
+
+    // Gauss kernel coefficients (same as in the color sample)
+    private static final float A = 0.123317f; // up-left-right-down
+    private static final float B = 0.077847f; // diagonal
+    private static final float C = 0.195346f; // center
+
+    private static final int BLUE = Color.BLUE.getRGB();
+
+    private FusedKernel() {
+    }
+
+    /**
+     * Is image supported by the kernel (pixels must be in int array)
+     *
+     * @param img image
+     * @return is supported
+     */
+    public static boolean isSupported(BufferedImage img) {
+        return img.getType() == BufferedImage.TYPE_INT_ARGB
+                && img.getRaster().getDataBuffer() instanceof DataBufferInt;
+    }
+
+    /**
+     * Applies blue removal, outline & fill interior effect on the image.
+     * Image must be supported (TYPE_INT_ARGB).
+     *
+     * @param img image
+     * @param outlineColor color of the outline (around)
+     * @param fillInterior fill interior of the outline
+     * @param drawOutline draws outline around the image
+     */
+    public static void apply(BufferedImage img, Color outlineColor, boolean fillInterior, boolean drawOutline) {
+        apply(img, new Rectangle(0, 0, img.getWidth(), img.getHeight()), outlineColor, fillInterior, drawOutline);
+    }
+
+    /**
+     * Applies blue removal, outline & fill interior effect on the region of
+     * the image. Pixels outside of the region must be transparent and at
+     * least one pixel away from non-transparent ones (region is opaque bounds
+     * grown by one pixel), then result is the same as for whole image.
+     *
+     * @param img image
+     * @param region region of the image to process
+     * @param outlineColor color of the outline (around)
+     * @param fillInterior fill interior of the outline
+     * @param drawOutline draws outline around the image
+     */
+    public static void apply(BufferedImage img, Rectangle region, Color outlineColor, boolean fillInterior, boolean drawOutline) {
+        final int stride = img.getWidth();
+        final int width = region.width;
+        final int height = region.height;
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        final int[] pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+        final int outline = outlineColor.getRGB();
+        final int first = region.y * stride + region.x;
+        // source rows (after blue removal), pixels are overwritten in place
+        int[] prevRow = new int[width];
+        int[] currRow = new int[width];
+        int[] nextRow = new int[width];
+        loadRow(pixels, first, width, currRow);
+        for (int py = 0; py < height; py++) {
+            if (py + 1 < height) {
+                loadRow(pixels, first + (py + 1) * stride, width, nextRow);
+            }
+            // clamped at the edges (same as color sample)
+            final int[] up = (py > 0) ? prevRow : currRow;
+            final int[] down = (py + 1 < height) ? nextRow : currRow;
+            final int row = first + py * stride;
+            for (int px = 0; px < width; px++) {
+                final int pixel = currRow[px];
+                if ((pixel >>> 24) > 0) {
+                    if (fillInterior) {
+                        pixels[row + px] = Highligther.tint(pixel, outlineColor);
+                    } else {
+                        pixels[row + px] = pixel;
+                    }
+                } else {
+                    if (drawOutline) {
+                        final int left = Math.max(px - 1, 0);
+                        final int right = Math.min(px + 1, width - 1);
+                        int alpha = (int) (B * ((up[left] >>> 24) + (up[right] >>> 24)
+                                + (down[left] >>> 24) + (down[right] >>> 24)));
+                        alpha = (int) (alpha + C * (pixel >>> 24));
+                        alpha = (int) (alpha + A * ((up[px] >>> 24) + (currRow[left] >>> 24)
+                                + (down[px] >>> 24) + (currRow[right] >>> 24)));
+                        pixels[row + px] = (alpha > 0) ? outline : pixel;
+                    } else {
+                        pixels[row + px] = pixel;
+                    }
+                }
+            }
+            // rotate rows
+            int[] temp = prevRow;
+            prevRow = currRow;
+            currRow = nextRow;
+            nextRow = temp;
+        }
+    }
+
+    // copy row of pixels with blue removed
+    private static void loadRow(int[] pixels, int offset, int width, int[] row) {
+        for (int px = 0; px < width; px++) {
+            final int pixel = pixels[offset + px];
+            row[px] = (pixel == BLUE) ? 0 : pixel;
+        }
+    }
+
+}
@@ -23,6 +23,7 @@ import java.awt.Toolkit;
 import java.awt.event.WindowEvent;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.io.File;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
@@ -1006,6 +1007,9 @@ public class GUI extends javax.swing.JFrame {
         FO2HLogger.init(args.length > 0 && args[0].equals("-debug"));
         cfg.readConfigFile();
         Palette.load("Fallout Palette.act");
+        if (!cfg.getPaletteLookupCache().isEmpty()) {
+            Palette.setLookupCache(new File(cfg.getPaletteLookupCache()));
+        }
         if (cfg.isLoadDictionaryOnStart()) {
             Highligther.initDictionary();
         }
@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2021 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.fo2h.highlighter;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.HashMap;
+import java.util.Map;
+import rs.alexanderstojanovich.fo2h.frm.ImageData;
+import rs.alexanderstojanovich.fo2h.frm.Palette;
+
+/**
+ * Font rasterized once (without antialiasing) into glyph atlas. Labels are
+ * drawn directly on palette indices of the frame by copying glyph masks, so
+ * labeled frames need no quantization and have exact palette colors.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class GlyphAtlas {
+
+    // characters in the atlas (Latin-1), others are drawn as '?'
+    public static final char FIRST_CHAR = 32;
+    public static final char LAST_CHAR = 255;
+
+    private static final Map<Font, GlyphAtlas> ATLASES = new HashMap<>();
+
+    private final int ascent;
+    private final int descent;
+
+    // glyph masks side by side (row-major, 1 - glyph pixel)
+    private final byte[] atlas;
+    private final int atlasWidth;
+
+    // position in the atlas and size of glyph masks
+    private final int[] glyphX = new int[LAST_CHAR - FIRST_CHAR + 1];
+    private final int[] glyphWidth = new int[LAST_CHAR - FIRST_CHAR + 1];
+    private final int[] glyphHeight = new int[LAST_CHAR - FIRST_CHAR + 1];
+    // mask position relative to pen position on the baseline
+    private final int[] bearingX = new int[LAST_CHAR - FIRST_CHAR + 1];
+    private final int[] bearingY = new int[LAST_CHAR - FIRST_CHAR + 1];
+    private final int[] advance = new int[LAST_CHAR - FIRST_CHAR + 1];
+
+    /**
+     * Creates glyph atlas of the font
+     *
+     * @param font font to rasterize
+     */
+    public GlyphAtlas(Font font) {
+        final FontRenderContext frc = new FontRenderContext(null, false, false);
+        final GlyphVector[] glyphs = new GlyphVector[glyphX.length];
+        final Rectangle[] bounds = new Rectangle[glyphX.length];
+        int width = 0;
+        int height = 1;
+        for (int i = 0; i < glyphX.length; i++) {
+            final char ch = font.canDisplay((char) (FIRST_CHAR + i)) ? (char) (FIRST_CHAR + i) : '?';
+            glyphs[i] = font.createGlyphVector(frc, String.valueOf(ch));
+            bounds[i] = glyphs[i].getPixelBounds(frc, 0.0f, 0.0f);
+            glyphX[i] = width;
+            glyphWidth[i] = bounds[i].width;
+            glyphHeight[i] = bounds[i].height;
+            bearingX[i] = bounds[i].x;
+            bearingY[i] = bounds[i].y;
+            width += bounds[i].width;
+            height = Math.max(height, bounds[i].height);
+        }
+        this.atlasWidth = Math.max(width, 1);
+
+        BufferedImage image = new BufferedImage(atlasWidth, height, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+        g2d.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_OFF);
+        g2d.setColor(Color.WHITE);
+        for (int i = 0; i < glyphX.length; i++) {
+            g2d.drawGlyphVector(glyphs[i], glyphX[i] - bearingX[i], -bearingY[i]);
+            advance[i] = Math.round(glyphs[i].getGlyphMetrics(0).getAdvance());
+        }
+        FontMetrics metrics = g2d.getFontMetrics(font);
+        this.ascent = metrics.getAscent();
+        this.descent = metrics.getDescent();
+        g2d.dispose();
+
+        final byte[] gray = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        this.atlas = new byte[gray.length];
+        for (int e = 0; e < gray.length; e++) {
+            atlas[e] = (byte) ((gray[e] & 0xFF) >= 128 ? 1 : 0);
+        }
+    }
+
+    /**
+     * Gets glyph atlas of the font (created and cached if it's not cached).
+     *
+     * @param font font of the atlas
+     * @return glyph atlas
+     */
+    public static GlyphAtlas get(Font font) {
+        synchronized (ATLASES) {
+            GlyphAtlas result = ATLASES.get(font);
+            if (result == null) {
+                result = new GlyphAtlas(font);
+                ATLASES.put(font, result);
+            }
+            return result;
+        }
+    }
+
+    private int glyph(char ch) {
+        return (ch >= FIRST_CHAR && ch <= LAST_CHAR) ? ch - FIRST_CHAR : '?' - FIRST_CHAR;
+    }
+
+    /**
+     * Gets width of the text (sum of glyph advances).
+     *
+     * @param text text to measure
+     * @return text width in pixels
+     */
+    public int getTextWidth(String text) {
+        int width = 0;
+        for (int i = 0; i < text.length(); i++) {
+            width += advance[glyph(text.charAt(i))];
+        }
+        return width;
+    }
+
+    /**
+     * Gets height of the text line (ascent and descent).
+     *
+     * @return text height in pixels
+     */
+    public int getTextHeight() {
+        return ascent + descent;
+    }
+
+    /**
+     * Draws text on palette indexed frame (clipped to the frame).
+     *
+     * @param dst frame to draw on
+     * @param text text to draw
+     * @param x pen position (left)
+     * @param baseline y coordinate of the baseline
+     * @param index palette index of the text
+     */
+    public void drawText(ImageData dst, String text, int x, int baseline, byte index) {
+        final byte[] data = dst.getData();
+        final int width = dst.getWidth();
+        for (int i = 0; i < text.length(); i++) {
+            final int g = glyph(text.charAt(i));
+            final int left = x + bearingX[g];
+            final int top = baseline + bearingY[g];
+            for (int gy = 0; gy < glyphHeight[g]; gy++) {
+                final int py = top + gy;
+                if (py < 0 || py >= dst.getHeight()) {
+                    continue;
+                }
+                final int src = gy * atlasWidth + glyphX[g];
+                for (int gx = 0; gx < glyphWidth[g]; gx++) {
+                    final int px = left + gx;
+                    if (px >= 0 && px < width && atlas[src + gx] != 0) {
+                        data[py * width + px] = index;
+                    }
+                }
+            }
+            x += advance[g];
+        }
+    }
+
+    /**
+     * Puts label above the palette indexed frame (same layout as
+     * {@link Highligther#putLabel}). Box, text, leader line and interior are
+     * drawn with palette entries nearest to label colors.
+     *
+     * @param img frame to put label on
+     * @param label label text
+     * @param color color of the label
+     * @param fillInterior fill interior of the label box
+     * @param labelHeight distance between the label box and the frame
+     * @return new frame with label (offsets are same as of the frame)
+     */
+    public ImageData putLabel(ImageData img, String label, Color color, boolean fillInterior, int labelHeight) {
+        final int fntWidth = getTextWidth(label);
+        final int fntHeight = getTextHeight();
+        final int width = Math.max(fntWidth, img.getWidth()) + 2;
+        final int height = fntHeight + labelHeight + img.getHeight() + 2;
+        ImageData result = new ImageData(width, height, img.getOffsetX(), img.getOffsetY());
+        final byte[] data = result.getData();
+
+        final byte[] lookup = Palette.getLookup();
+        final byte index = lookup[color.getRGB() & 0xFFFFFF];
+        if (fillInterior) {
+            float luma = (color.getRed() * Highligther.LUMA_RED_COEFF + color.getGreen() * Highligther.LUMA_GREEN_COEFF + color.getBlue() * Highligther.LUMA_BLUE_COEFF) / 255.0f;
+            Color grey = new Color(0.5f * luma, 0.5f * luma, 0.5f * luma, 1.0f);
+            final byte greyIndex = lookup[grey.getRGB() & 0xFFFFFF];
+            for (int py = 2; py <= fntHeight; py++) {
+                for (int px = 2; px <= fntWidth; px++) {
+                    data[py * width + px] = greyIndex;
+                }
+            }
+        }
+        // box (with cut corners)
+        for (int px = 2; px <= fntWidth; px++) {
+            data[width + px] = index;
+            data[(fntHeight + 1) * width + px] = index;
+        }
+        for (int py = 2; py <= fntHeight; py++) {
+            data[py * width + 1] = index;
+            data[py * width + fntWidth + 1] = index;
+        }
+        drawText(result, label, 1, 1 + ascent, index);
+
+        // leader line (covered by the frame)
+        final int lineX = fntWidth / 2;
+        for (int py = fntHeight + 1; py <= fntHeight + labelHeight + img.getHeight() / 2 - 1; py++) {
+            data[py * width + lineX] = index;
+        }
+
+        final int imgX = (width - img.getWidth()) / 2;
+        final int imgY = height - img.getHeight();
+        final byte[] src = img.getData();
+        for (int py = 0; py < img.getHeight(); py++) {
+            final int row = py * img.getWidth();
+            final int dst = (imgY + py) * width + imgX;
+            for (int px = 0; px < img.getWidth(); px++) {
+                if (src[row + px] != 0) {
+                    data[dst + px] = src[row + px];
+                }
+            }
+        }
+
+        return result;
+    }
+
+}
@@ -19,9 +19,8 @@ package rs.alexanderstojanovich.fo2h.highlighter;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
-import java.awt.font.FontRenderContext;
-import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.WritableRaster;
 import java.io.BufferedReader;
@@ -34,16 +33,36 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import javax.swing.SwingWorker;
 import rs.alexanderstojanovich.fo2h.frm.FRM;
+import rs.alexanderstojanovich.fo2h.frm.FRMWriter;
 import rs.alexanderstojanovich.fo2h.frm.ImageData;
 import rs.alexanderstojanovich.fo2h.frm.Palette;
+import rs.alexanderstojanovich.fo2h.frm.RLEImageData;
+import rs.alexanderstojanovich.fo2h.util.BitMask;
+import rs.alexanderstojanovich.fo2h.util.BlurEngine;
 import rs.alexanderstojanovich.fo2h.util.ColorSample;
+import rs.alexanderstojanovich.fo2h.util.DistanceTransform;
 import rs.alexanderstojanovich.fo2h.util.FO2HLogger;
 
 /**
@@ -52,9 +71,11 @@ import rs.alexanderstojanovich.fo2h.util.FO2HLogger;
  */
 public class Highligther extends SwingWorker<Void, Void> {
 
-    private static final float LUMA_RED_COEFF = 0.2126f;
-    private static final float LUMA_GREEN_COEFF = 0.7152f;
-    private static final float LUMA_BLUE_COEFF = 0.0722f;
+    static final float LUMA_RED_COEFF = 0.2126f;
+    static final float LUMA_GREEN_COEFF = 0.7152f;
+    static final float LUMA_BLUE_COEFF = 0.0722f;
+    // least blurred alpha of hard glow pixel (FRM output)
+    static final int HARD_GLOW_ALPHA = 128;
 
     private static final String TEXTFILE = "Dictionary.txt";
 
@@ -65,7 +86,23 @@ public class Highligther extends SwingWorker<Void, Void> {
     public static final Map<String, Obj> DICTIONARY = new HashMap<>();
     public static final Map<String, String> MAPPED_BY = new HashMap<>();
 
-    private boolean stopped = false;
+    private volatile boolean stopped = false;
+
+    // manifest of the output directory (null if build is not incremental)
+    private BuildManifest manifest;
+    // source files which output is written in this run
+    private final Set<File> written = ConcurrentHashMap.newKeySet();
+    // names of the mask cache files used in this run (others are pruned)
+    private final Set<String> usedMaskFiles = ConcurrentHashMap.newKeySet();
+
+    // number of processed source files (reported as progress)
+    private final AtomicInteger processed = new AtomicInteger();
+    // highest number of processed files reported so far
+    private final Object progressLock = new Object();
+    private int reported = 0;
+
+    // indexed kernels by item color (used by effect threads)
+    private final ConcurrentMap<Integer, IndexedKernel> indexedKernels = new ConcurrentHashMap<>();
 
     private static String dictionaryErrorMessage;
 
@@ -293,24 +330,232 @@ public class Highligther extends SwingWorker<Void, Void> {
         WritableRaster wr = img.copyData(null);
         for (int px = 0; px < img.getWidth(); px++) {
             for (int py = 0; py < img.getHeight(); py++) {
-                Color pixCol = new Color(img.getRGB(px, py), true);
-                // writtable raster must be associated with ARGB image!!
-                ColorSample cs = ColorSample.getGaussianBlurSample(wr, px, py);
-                if (pixCol.getAlpha() > 0 && fillInterior) {
-                    final Color itemCol = outlineColor;
-                    float luma = (pixCol.getRed() * LUMA_RED_COEFF + pixCol.getGreen() * LUMA_GREEN_COEFF + pixCol.getBlue() * LUMA_BLUE_COEFF) / 255.0f;
-                    int outRed = Math.min(Math.max(Math.round(luma * itemCol.getRed()), 0), 255);
-                    int outGreen = Math.min(Math.max(Math.round(luma * itemCol.getGreen()), 0), 255);
-                    int outBlue = Math.min(Math.max(Math.round(luma * itemCol.getBlue()), 0), 255);
-                    final Color outCol = new Color(outRed, outGreen, outBlue);
-                    img.setRGB(px, py, outCol.getRGB());
-                } else if (pixCol.getAlpha() == 0 && cs.getAlpha() > 0 && drawOutline) {
+                final int pixel = img.getRGB(px, py);
+                if ((pixel >>> 24) > 0 && fillInterior) {
+                    img.setRGB(px, py, tint(pixel, outlineColor));
+                } else if ((pixel >>> 24) == 0 && drawOutline
+                        // writtable raster must be associated with ARGB image!!
+                        && (ColorSample.getGaussianBlurARGB(wr, px, py) >>> 24) > 0) {
                     img.setRGB(px, py, outlineColor.getRGB());
                 }
             }
         }
     }
 
+    /**
+     * Create outline of given width around the image. Transparent pixel is
+     * part of the outline if it's close enough to the nearest opaque pixel.
+     * Outline 1 pixel wide is dilation of the bit mask, wider one uses
+     * distance transform (cost doesn't depend on the width).
+     *
+     * @param img parsed image (with blue removed)
+     * @param outlineColor color of the outline (around)
+     * @param width outline width in pixels
+     */
+    public static final void createOutline(BufferedImage img, Color outlineColor, int width) {
+        createOutline(img, outlineColor, width, new Rectangle(0, 0, img.getWidth(), img.getHeight()));
+    }
+
+    /**
+     * Create outline of given width around the opaque bounds of the image.
+     * Only the bounds and outline around them are visited.
+     *
+     * @param img parsed image (with blue removed)
+     * @param outlineColor color of the outline (around)
+     * @param width outline width in pixels
+     * @param bounds bounds of non-transparent pixels
+     */
+    public static final void createOutline(BufferedImage img, Color outlineColor, int width, Rectangle bounds) {
+        final Rectangle region = grow(bounds, width, img);
+        if (region.isEmpty()) {
+            return;
+        }
+        int[] pixels = img.getRGB(region.x, region.y, region.width, region.height, null, 0, region.width);
+        BitMask mask = new BitMask(region.width, region.height);
+        for (int py = 0; py < region.height; py++) {
+            for (int px = 0; px < region.width; px++) {
+                if ((pixels[py * region.width + px] >>> 24) > 0) {
+                    mask.set(px, py);
+                }
+            }
+        }
+        if (width > 1) {
+            final int[] dist = DistanceTransform.squaredDistance(mask);
+            for (int e = 0; e < pixels.length; e++) {
+                if (dist[e] != 0 && isInOutline(dist[e], width)) {
+                    pixels[e] = outlineColor.getRGB();
+                }
+            }
+        } else {
+            BitMask ring = mask.dilate();
+            ring.andNot(mask);
+            ring.fill(pixels, outlineColor.getRGB());
+        }
+        img.setRGB(region.x, region.y, region.width, region.height, pixels, 0, region.width);
+    }
+
+    /**
+     * Gets bounds grown by the margin (on each side), limited to the image.
+     *
+     * @param bounds bounds to grow
+     * @param margin margin in pixels
+     * @param img image
+     * @return grown bounds (empty if bounds are empty)
+     */
+    public static Rectangle grow(Rectangle bounds, int margin, BufferedImage img) {
+        if (bounds.isEmpty()) {
+            return new Rectangle();
+        }
+        Rectangle result = new Rectangle(bounds);
+        result.grow(margin, margin);
+        return result.intersection(new Rectangle(0, 0, img.getWidth(), img.getHeight()));
+    }
+
+    /**
+     * Gets bounding box of non-transparent pixels of the image.
+     *
+     * @param img parsed image
+     * @return opaque bounds (empty if all the pixels are transparent)
+     */
+    public static Rectangle getOpaqueBounds(BufferedImage img) {
+        final int width = img.getWidth();
+        int minX = width;
+        int maxX = -1;
+        int minY = -1;
+        int maxY = -1;
+        int[] row = new int[width];
+        for (int py = 0; py < img.getHeight(); py++) {
+            img.getRGB(0, py, width, 1, row, 0, width);
+            for (int px = 0; px < width; px++) {
+                if ((row[px] >>> 24) != 0) {
+                    if (minY == -1) {
+                        minY = py;
+                    }
+                    maxY = py;
+                    minX = Math.min(minX, px);
+                    maxX = Math.max(maxX, px);
+                }
+            }
+        }
+        if (maxY == -1) {
+            return new Rectangle();
+        }
+        return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+    }
+
+    /**
+     * Has image hard alpha (each pixel is transparent or alpha is at least
+     * 13). For such image Gaussian alpha sample of transparent pixel is
+     * greater than zero exactly when some of 8 neighbours is not transparent,
+     * so outline can be made from the bit mask.
+     *
+     * @param img parsed image
+     * @return has hard alpha
+     */
+    public static boolean isHardAlpha(BufferedImage img) {
+        return isHardAlpha(img, new Rectangle(0, 0, img.getWidth(), img.getHeight()));
+    }
+
+    /**
+     * Has image hard alpha (only the bounds of non-transparent pixels are
+     * checked).
+     *
+     * @param img parsed image
+     * @param bounds bounds of non-transparent pixels
+     * @return has hard alpha
+     */
+    public static boolean isHardAlpha(BufferedImage img, Rectangle bounds) {
+        final int width = bounds.width;
+        int[] row = new int[Math.max(width, 0)];
+        for (int py = bounds.y; py < bounds.y + bounds.height; py++) {
+            img.getRGB(bounds.x, py, width, 1, row, 0, width);
+            for (int px = 0; px < width; px++) {
+                final int alpha = row[px] >>> 24;
+                if (alpha > 0 && alpha < 13) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Is pixel with given (squared) distance to the image in outline of given
+     * width. Width 1 gives the same pixels as 3x3 neighbourhood.
+     *
+     * @param squaredDistance squared distance to the nearest opaque pixel
+     * @param width outline width in pixels
+     * @return is part of the outline
+     */
+    static boolean isInOutline(int squaredDistance, int width) {
+        // distance < width + 1/2
+        return 4L * squaredDistance < (2L * width + 1) * (2L * width + 1);
+    }
+
+    /**
+     * Create soft glow around the image. Transparent pixels get glow color
+     * with alpha of (Gaussian) blurred alpha of the image.
+     *
+     * @param img parsed image
+     * @param glowColor color of the glow
+     * @param radius radius of the glow
+     */
+    public static final void createGlow(BufferedImage img, Color glowColor, int radius) {
+        createGlow(img, glowColor, radius, false);
+    }
+
+    /**
+     * Create glow around the image. Soft glow is for PNG output. Hard glow is
+     * for palette output (FRM has no alpha, quantized soft glow would be a
+     * solid blob) - transparent pixels with blurred alpha of at least 128 get
+     * opaque glow color, others stay transparent.
+     *
+     * @param img parsed image
+     * @param glowColor color of the glow
+     * @param radius radius of the glow
+     * @param hard threshold the glow alpha (instead of soft glow)
+     */
+    public static final void createGlow(BufferedImage img, Color glowColor, int radius, boolean hard) {
+        final int width = img.getWidth();
+        final int height = img.getHeight();
+        int[] pixels = img.getRGB(0, 0, width, height, null, 0, width);
+        int[] alpha = new int[pixels.length];
+        for (int e = 0; e < pixels.length; e++) {
+            alpha[e] = pixels[e] >>> 24;
+        }
+        BlurEngine.gaussianBlur(alpha, width, height, radius, alpha);
+        final int rgb = glowColor.getRGB() & 0xFFFFFF;
+        for (int e = 0; e < pixels.length; e++) {
+            if ((pixels[e] >>> 24) == 0 && alpha[e] > 0) {
+                if (!hard) {
+                    pixels[e] = (Math.min(alpha[e], 255) << 24) | rgb;
+                } else if (alpha[e] >= HARD_GLOW_ALPHA) {
+                    pixels[e] = 0xFF000000 | rgb;
+                }
+            }
+        }
+        img.setRGB(0, 0, width, height, pixels, 0, width);
+    }
+
+    /**
+     * Tints the color with item color (fill interior effect). Luma of the
+     * color is applied to the item color.
+     *
+     * @param rgb color to tint (alpha is ignored)
+     * @param itemCol item color
+     * @return tinted color (opaque)
+     */
+    static int tint(int rgb, Color itemCol) {
+        final int red = (rgb >> 16) & 0xFF;
+        final int green = (rgb >> 8) & 0xFF;
+        final int blue = rgb & 0xFF;
+        float luma = (red * LUMA_RED_COEFF + green * LUMA_GREEN_COEFF + blue * LUMA_BLUE_COEFF) / 255.0f;
+        int outRed = Math.min(Math.max(Math.round(luma * itemCol.getRed()), 0), 255);
+        int outGreen = Math.min(Math.max(Math.round(luma * itemCol.getGreen()), 0), 255);
+        int outBlue = Math.min(Math.max(Math.round(luma * itemCol.getBlue()), 0), 255);
+        return 0xFF000000 | (outRed << 16) | (outGreen << 8) | outBlue;
+    }
+
     /**
      * Puts label (a sign) bound to the image.
      *
@@ -324,44 +569,851 @@ public class Highligther extends SwingWorker<Void, Void> {
     public static final BufferedImage putLabel(BufferedImage img, Font font, String label, Color color, boolean fillInterior) {
         final int labelHeight = 2 * font.getSize();
 
-        FontRenderContext frc = new FontRenderContext(null, true, true);
-
-        Rectangle2D bounds = font.getStringBounds(label, frc);
-        int fntWidth = (int) Math.round(bounds.getWidth());
-        int fntHeight = (int) Math.round(bounds.getHeight());
+        // box and text are rendered once per label style
+        final LabelCache.Label cached = LabelCache.get(font, label, color, fillInterior);
+        int fntWidth = cached.getWidth();
+        int fntHeight = cached.getHeight();
 
         BufferedImage result = new BufferedImage(Math.max(fntWidth, img.getWidth()) + 2, (fntHeight + labelHeight + img.getHeight() + 1) + 1, BufferedImage.TYPE_INT_ARGB);
-        Graphics2D resG2D = result.createGraphics();
+        // result is transparent, so copying is same as drawing the label
+        result.getRaster().setRect(cached.getImage().getRaster());
 
-        resG2D.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_QUALITY);
-        resG2D.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        resG2D.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-        resG2D.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
-        resG2D.setRenderingHint(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_ENABLE);
-        resG2D.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
-        resG2D.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+        Graphics2D resG2D = result.createGraphics();
+        LabelCache.setRenderingHints(resG2D);
 
         resG2D.setColor(color);
-        resG2D.drawRoundRect(1, 1, fntWidth, fntHeight, 2, 2);
-        if (fillInterior) {
-            float luma = (color.getRed() * LUMA_RED_COEFF + color.getGreen() * LUMA_GREEN_COEFF + color.getBlue() * LUMA_BLUE_COEFF) / 255.0f;
-            Color grey = new Color(0.5f * luma, 0.5f * luma, 0.5f * luma, 1.0f);
-            resG2D.setColor(grey);
-            resG2D.fillRoundRect(1, 1, fntWidth, fntHeight, 1, 1);
+        resG2D.drawLine(fntWidth / 2, fntHeight + 1, fntWidth / 2, fntHeight + labelHeight + img.getHeight() / 2 - 1);
+        resG2D.drawImage(img, (result.getWidth() - img.getWidth()) / 2, result.getHeight() - img.getHeight(), null);
+
+        return result;
+    }
+
+    /**
+     * Gets output file for the source file. In recursive mode directory
+     * structure of the input directory is preserved.
+     *
+     * @param srcFile source file
+     * @param ext extension of the output file (with dot)
+     * @return output file
+     */
+    private File getOutFile(File srcFile, String ext) {
+        File outFile = null;
+        if (config.isRecursive()) {
+            File dirs = srcFile;
+            StringBuilder sb = new StringBuilder();
+            while (!dirs.equals(config.getInDir())) {
+                dirs = dirs.getParentFile();
+                sb.insert(0, dirs.getName());
+                sb.insert(0, File.separator);
+            }
+            outFile = new File(config.getOutDir() + File.separator + sb.toString() + File.separator + srcFile.getName().replaceFirst("[.][^.]+$", ext));
+        } else {
+            outFile = new File(config.getOutDir() + File.separator + srcFile.getName().replaceFirst("[.][^.]+$", ext));
         }
-        resG2D.setColor(color);
-        resG2D.setFont(font);
+        return outFile;
+    }
+
+    /**
+     * Gets output file for the source file.
+     *
+     * @param srcFile source file
+     * @return output file or null if source file is not processed
+     */
+    private File getOutFile(File srcFile) {
+        final String name = srcFile.getName().toLowerCase();
+        if (name.endsWith(".fofrm") || name.endsWith(".frm")) {
+            return getOutFile(srcFile, ".FRM");
+        } else if (name.endsWith(".png")) {
+            return getOutFile(srcFile, ".png");
+        }
+        return null;
+    }
 
-        resG2D.translate(0, -Math.round(bounds.getY()));
-        resG2D.drawString(new String(label.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8), 1.0f, 1.0f);
-        resG2D.translate(0, Math.round(bounds.getY()));
+    /**
+     * Decode stage. Reads the source file (FRM or PNG) into the job. Fofrm
+     * files are not decoded as they're copied to the output.
+     *
+     * @param srcFile source file
+     * @return job holding decoded source
+     */
+    Job decode(File srcFile) {
+        final Job job = new Job(srcFile, getOutFile(srcFile));
+        switch (job.getType()) {
+            case FRM:
+                final File maskFile = getMaskFile(srcFile);
+                if (maskFile != null && maskFile.exists()) {
+                    // only the header is read, frames are recolored from the masks
+                    final FRM probed = FRM.probe(srcFile);
+                    final MaskCache masks = (probed != null) ? MaskCache.read(maskFile) : null;
+                    if (masks != null && masks.getFrameCount() == probed.getFrameCount()) {
+                        job.setSrcFRM(probed);
+                        job.setMasks(masks);
+                        break;
+                    }
+                }
+                if (maskFile != null) {
+                    job.setMasks(new MaskCache());
+                    job.setMaskFile(maskFile);
+                }
+                // mapped file cannot be overwritten (on Windows) until it's unmapped by GC
+                final boolean mapped = config.getMemoryMapThreshold() >= 0 && srcFile.length() >= config.getMemoryMapThreshold()
+                        && !srcFile.getAbsolutePath().equalsIgnoreCase(job.getOutFile().getAbsolutePath());
+                final FRM frm = new FRM(srcFile, mapped);
+                job.setSrcFRM(frm);
+                if (config.isCompactFrames()) {
+                    // keep only opaque runs, file buffer is returned to the pool
+                    final List<RLEImageData> frames = new ArrayList<>();
+                    for (int i = 0; i < frm.getFrameCount(); i++) {
+                        frames.add(new RLEImageData(frm.getFrame(i)));
+                    }
+                    frm.release();
+                    job.setSrcCompactFrames(frames);
+                }
+                break;
+            case PNG:
+                try {
+                    job.setSrcImage(ImageIO.read(srcFile));
+                } catch (IOException ex) {
+                    FO2HLogger.reportError(ex.getMessage(), ex);
+                }
+                break;
+            default:
+                break;
+        }
+        return job;
+    }
 
-        resG2D.drawLine(fntWidth / 2, fntHeight + 1, fntWidth / 2, fntHeight + labelHeight + img.getHeight() / 2 - 1);
-        resG2D.drawImage(img, (result.getWidth() - img.getWidth()) / 2, result.getHeight() - img.getHeight(), null);
+    /**
+     * Tells whether label is put on the file.
+     *
+     * @param extLessFilename filename without extension (dictionary key)
+     * @return is file labeled
+     */
+    private boolean isLabeled(String extLessFilename) {
+        Obj obj = DICTIONARY.get(extLessFilename);
+        return config.isPutLabels() && obj != null && obj.isLabeled();
+    }
+
+    /**
+     * Tells whether frames of the file are transformed directly on palette
+     * indices (no glow and no labels, unless they're bitmap labels).
+     *
+     * @param extLessFilename filename without extension (dictionary key)
+     * @return is indexed kernel used
+     */
+    private boolean isIndexedTransform(String extLessFilename) {
+        return (!isLabeled(extLessFilename) || config.isBitmapLabels())
+                && config.isIndexedEffects() && config.getGlowRadius() <= 0;
+    }
+
+    /**
+     * Puts bitmap label on the result frame if the file is labeled and bitmap
+     * labels are used.
+     *
+     * @param frame result frame (palette indexed)
+     * @param extLessFilename filename without extension (dictionary key)
+     * @return labeled frame (or same frame if it's not labeled)
+     */
+    private ImageData putBitmapLabel(ImageData frame, String extLessFilename) {
+        if (!config.isBitmapLabels() || !isLabeled(extLessFilename)) {
+            return frame;
+        }
+        return GlyphAtlas.get(myFont).putLabel(frame, MAPPED_BY.getOrDefault(extLessFilename, extLessFilename),
+                getItemColor(extLessFilename), config.isFillInterior(), 2 * myFont.getSize());
+    }
+
+    /**
+     * Applies effects on frame of the job's FRM. Source frame is taken from
+     * compact frames if FRM was decoded into them. With mask cache frame is
+     * recolored from the cached mask (or the mask is computed and kept).
+     *
+     * @param job job with decoded FRM
+     * @param index frame index
+     * @param extLessFilename filename without extension (dictionary key)
+     * @return result frame (palette indexed)
+     */
+    private ImageData transformFrame(Job job, int index, String extLessFilename) {
+        final MaskCache masks = job.getMasks();
+        if (masks != null) {
+            final IndexedKernel kernel = getIndexedKernel(getItemColor(extLessFilename));
+            OutlineMask mask;
+            if (job.getMaskFile() == null) {
+                mask = masks.get(index);
+            } else {
+                final List<RLEImageData> srcFrames = job.getSrcCompactFrames();
+                mask = kernel.mask((srcFrames != null) ? srcFrames.get(index).toImageData() : job.getSrcFRM().getFrame(index));
+                masks.add(mask);
+            }
+            return putBitmapLabel(kernel.apply(mask), extLessFilename);
+        }
+        final List<RLEImageData> srcFrames = job.getSrcCompactFrames();
+        if (srcFrames == null) {
+            return transformFrame(job.getSrcFRM().getFrame(index), extLessFilename);
+        }
+        final RLEImageData frame = srcFrames.get(index);
+        if (isIndexedTransform(extLessFilename)) {
+            return putBitmapLabel(getIndexedKernel(getItemColor(extLessFilename)).apply(frame), extLessFilename);
+        }
+        return transformFrame(frame.toImageData(), extLessFilename);
+    }
+
+    /**
+     * Drops decoded (or transformed) source of the job, returning its
+     * buffers to the pool. Used for jobs which are not written.
+     *
+     * @param job job to drop
+     */
+    static void discard(Job job) {
+        if (job.getSrcFRM() != null) {
+            job.getSrcFRM().release();
+        }
+        job.setSrcCompactFrames(null);
+        job.setMasks(null);
+    }
+
+    /**
+     * Applies effects on single FRM frame.
+     *
+     * @param frame source frame
+     * @param extLessFilename filename without extension (dictionary key)
+     * @return result frame (palette indexed)
+     */
+    private ImageData transformFrame(ImageData frame, String extLessFilename) {
+        if (isIndexedTransform(extLessFilename)) {
+            return putBitmapLabel(getIndexedKernel(getItemColor(extLessFilename)).apply(frame), extLessFilename);
+        }
+
+        final BufferedImage imgSrc = frame.toIndexedImage();
+        final int border = getBorder();
+        BufferedImage imgDst = new BufferedImage(imgSrc.getWidth() + 2 * border, imgSrc.getHeight() + 2 * border, BufferedImage.TYPE_INT_ARGB);
+
+        Graphics2D graphics2D = imgDst.createGraphics();
+        graphics2D.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_QUALITY);
+        graphics2D.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        graphics2D.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        graphics2D.setRenderingHint(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_ENABLE);
+        graphics2D.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        graphics2D.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+
+        graphics2D.drawImage(imgSrc, border, border, null);
+
+        // opaque bounds of the frame (in padded image)
+        final Rectangle bounds = frame.getOpaqueBounds();
+        bounds.translate(border, border);
+        // blue removal, outline & fill interior effect (hard glow for FRM)
+        applyEffects(imgDst, getItemColor(extLessFilename), bounds, true);
+
+        // label
+        if (isLabeled(extLessFilename) && !config.isBitmapLabels()) {
+            imgDst = putLabel(imgDst, myFont, MAPPED_BY.getOrDefault(extLessFilename, extLessFilename), getItemColor(extLessFilename), config.isFillInterior());
+            return new ImageData(imgDst, frame.getOffsetX(), frame.getOffsetY());
+        }
+
+        // only opaque bounds with outline & glow around are converted
+        return putBitmapLabel(new ImageData(imgDst, frame.getOffsetX(), frame.getOffsetY(), grow(bounds, border, imgDst)), extLessFilename);
+    }
+
+    /**
+     * Applies blue removal, outline and fill interior effect on the image
+     * (with fused kernel if it's enabled and image is supported). Fast paths
+     * only visit the opaque bounds and the outline around them.
+     *
+     * @param img image to apply effects on
+     * @param itemColor item color
+     * @param bounds bounds of non-transparent pixels of the image
+     * @param hardGlow glow is thresholded (palette output)
+     */
+    private void applyEffects(BufferedImage img, Color itemColor, Rectangle bounds, boolean hardGlow) {
+        // outline from the mask is made separately (after fill interior),
+        // soft alpha needs Gaussian sample
+        final boolean maskOutline = config.isDrawOutline() && (config.getOutlineWidth() > 1 || isHardAlpha(img, bounds));
+        final boolean drawOutline = config.isDrawOutline() && !maskOutline;
+        if (config.isFusedEffects() && FusedKernel.isSupported(img)) {
+            FusedKernel.apply(img, grow(bounds, 1, img), itemColor, config.isFillInterior(), drawOutline);
+        } else {
+            // blue color removal
+            removeBlue(img);
+            // outline & fill interior effect
+            createOutline(img, itemColor, config.isFillInterior(), drawOutline);
+        }
+        if (maskOutline) {
+            createOutline(img, itemColor, config.getOutlineWidth(), bounds);
+        }
+        if (config.getGlowRadius() > 0) {
+            createGlow(img, itemColor, config.getGlowRadius(), hardGlow);
+        }
+    }
+
+    /**
+     * Gets border put around the image (room for the outline and the glow).
+     *
+     * @return border in pixels
+     */
+    private int getBorder() {
+        return Math.max(config.getOutlineWidth(), 1) + Math.max(config.getGlowRadius(), 0);
+    }
+
+    /**
+     * Gets indexed kernel for the item color (kernels are made once per
+     * color).
+     *
+     * @param itemColor item color
+     * @return indexed kernel
+     */
+    private IndexedKernel getIndexedKernel(Color itemColor) {
+        IndexedKernel kernel = indexedKernels.get(itemColor.getRGB());
+        if (kernel == null) {
+            kernel = new IndexedKernel(itemColor, config.isFillInterior(), config.isDrawOutline(), config.getOutlineWidth());
+            IndexedKernel other = indexedKernels.putIfAbsent(itemColor.getRGB(), kernel);
+            if (other != null) {
+                kernel = other;
+            }
+        }
+        return kernel;
+    }
+
+    /**
+     * Effect stage. Applies blue removal, outline, fill interior and label
+     * effects on decoded PNG of the job. FRM is left as it is, its frames are
+     * transformed one at a time while it's written (so whole transformed FRM
+     * is never held in memory, nor waits in the pipeline queue).
+     *
+     * @param job decoded job
+     */
+    void transform(Job job) {
+        // get extensionless filename
+        final String extLessFilename = job.getSrcFile().getName().replaceFirst("[.][^.]+$", "");
+        //----------------------------------------------------------
+        if (job.getType() == Job.Type.PNG && job.getSrcImage() != null) {
+            BufferedImage imgSrc = job.getSrcImage();
+            final int border = getBorder();
+            BufferedImage imgDst = new BufferedImage(imgSrc.getWidth() + 2 * border, imgSrc.getHeight() + 2 * border, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D graphics2D = imgDst.createGraphics();
+            graphics2D.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_QUALITY);
+            graphics2D.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            graphics2D.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            graphics2D.setRenderingHint(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_ENABLE);
+            graphics2D.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            graphics2D.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+
+            graphics2D.drawImage(imgSrc, border, border, null);
+            // blue removal, outline & fill interior effect
+            applyEffects(imgDst, getItemColor(extLessFilename), getOpaqueBounds(imgDst), false);
+
+            // label
+            Obj obj = DICTIONARY.get(extLessFilename);
+            if (config.isPutLabels() && obj != null && obj.isLabeled()) {
+                imgDst = putLabel(imgDst, myFont, MAPPED_BY.getOrDefault(extLessFilename, extLessFilename), getItemColor(extLessFilename), config.isFillInterior());
+            }
+            job.setSrcImage(null);
+            job.setDstImage(imgDst);
+        }
+    }
+
+    /**
+     * Write stage. Writes result of the job to the output directory (or
+     * copies fofrm file there). Source file is remembered as written if it
+     * succeeded.
+     *
+     * @param job transformed job
+     * @return is output written
+     */
+    boolean write(Job job) {
+        final File outFile = job.getOutFile();
+        boolean ok = false;
+        switch (job.getType()) {
+            case FOFRM:
+                try {
+                    Files.copy(job.getSrcFile().toPath(), outFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    ok = true;
+                } catch (IOException ex) {
+                    FO2HLogger.reportError(ex.getMessage(), ex);
+                }
+                break;
+            case FRM:
+                if (job.getSrcFRM() == null || job.getSrcFRM().isFailed()) {
+                    // missing or truncated FRM, previous output is kept
+                    discard(job);
+                    break;
+                }
+                if (outFile.exists()) {
+                    outFile.delete();
+                }
 
+                outFile.mkdirs();
+
+                ok = writeFRM(job);
+                break;
+            case PNG:
+                if (job.getDstImage() != null) {
+                    if (outFile.exists()) {
+                        outFile.delete();
+                    }
+
+                    outFile.mkdirs();
+
+                    try {
+                        ok = ImageIO.write(job.getDstImage(), "png", outFile);
+                    } catch (IOException ex) {
+                        FO2HLogger.reportError(ex.getMessage(), ex);
+                    }
+                }
+                break;
+            default:
+                break;
+        }
+        if (ok) {
+            written.add(job.getSrcFile());
+        }
+        return ok;
+    }
+
+    /**
+     * Writes FRM of the job frame by frame. Each frame is transformed and
+     * written right away, so only one frame is held in memory. If writing fails (or some frame
+     * cannot be transformed) output file is deleted.
+     *
+     * @param job job with decoded FRM
+     * @return is FRM written
+     */
+    private boolean writeFRM(Job job) {
+        final FRM srcFRM = job.getSrcFRM();
+        final String extLessFilename = job.getSrcFile().getName().replaceFirst("[.][^.]+$", "");
+        FRMWriter writer = null;
+        boolean complete = false;
+        try {
+            writer = new FRMWriter(job.getOutFile(),
+                    srcFRM.getVersion(),
+                    srcFRM.getFps(),
+                    srcFRM.getActionFrame(),
+                    srcFRM.getFramesPerDirection(),
+                    srcFRM.getShiftX(),
+                    srcFRM.getShiftY()
+            );
+            writer.setTrim(config.isTrimFrames());
+            for (int i = 0; i < srcFRM.getFrameCount(); i++) {
+                writer.writeFrame(transformFrame(job, i, extLessFilename));
+            }
+            complete = true;
+        } catch (IOException ex) {
+            FO2HLogger.reportError(ex.getMessage(), ex);
+        } finally {
+            srcFRM.release();
+            job.setSrcCompactFrames(null);
+            if (writer != null && complete) {
+                try {
+                    writer.close();
+                } catch (IOException ex) {
+                    complete = false;
+                    FO2HLogger.reportError(ex.getMessage(), ex);
+                    job.getOutFile().delete();
+                }
+            } else if (writer != null) {
+                writer.abort();
+            }
+        }
+        // masks are cached only for the written FRM
+        if (complete && job.getMaskFile() != null) {
+            job.getMasks().write(job.getMaskFile());
+        }
+        job.setMasks(null);
+        return complete;
+    }
+
+    /**
+     * Process single source file (copy fofrm, highlight FRM or PNG) and write
+     * the result to the output directory. FRM frames are streamed (effects are
+     * applied while writing).
+     *
+     * @param srcFile source file
+     */
+    private void process(File srcFile) {
+        Job job = decode(srcFile);
+        transform(job);
+        write(job);
+    }
+
+    /**
+     * Groups source files by the output file they are written to. Files which
+     * end up in the same output (like 'item.fofrm' and 'item.frm') are kept in
+     * the same group in listing order, so the last one wins no matter how
+     * many workers are used.
+     *
+     * @param fileArray source files
+     * @return groups of source files (in listing order)
+     */
+    private List<List<File>> groupByOutput(File[] fileArray) {
+        Map<String, List<File>> groups = new LinkedHashMap<>();
+        for (File srcFile : fileArray) {
+            File outFile = getOutFile(srcFile);
+            // output is compared case-insensitive (Windows file system)
+            String key = (outFile == null) ? srcFile.getAbsolutePath() : outFile.getAbsolutePath().toLowerCase();
+            List<File> group = groups.get(key);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(key, group);
+            }
+            group.add(srcFile);
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    /**
+     * Estimates cost of processing the source file (number of pixels) from
+     * the FRM header or PNG header, without decoding the pixels.
+     *
+     * @param srcFile source file
+     * @return estimated cost
+     */
+    private static long estimateCost(File srcFile) {
+        final String name = srcFile.getName().toLowerCase();
+        long cost = 0L;
+        if (name.endsWith(".frm")) {
+            FRM frm = FRM.probe(srcFile);
+            if (frm != null) {
+                cost = frm.getPixelCount();
+            }
+        } else if (name.endsWith(".png")) {
+            ImageInputStream iis = null;
+            try {
+                iis = ImageIO.createImageInputStream(srcFile);
+                Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+                if (readers.hasNext()) {
+                    ImageReader reader = readers.next();
+                    reader.setInput(iis);
+                    cost = (long) reader.getWidth(0) * reader.getHeight(0);
+                    reader.dispose();
+                }
+            } catch (IOException ex) {
+                FO2HLogger.reportError(ex.getMessage(), ex);
+            } finally {
+                if (iis != null) {
+                    try {
+                        iis.close();
+                    } catch (IOException ex) {
+                        FO2HLogger.reportError(ex.getMessage(), ex);
+                    }
+                }
+            }
+        }
+        return cost;
+    }
+
+    /**
+     * Sorts groups of source files by estimated cost (descending).
+     *
+     * @param groups groups of source files with the same output
+     */
+    private static void sortByCost(List<List<File>> groups) {
+        final Map<List<File>, Long> costs = new IdentityHashMap<>();
+        for (List<File> group : groups) {
+            long cost = 0L;
+            for (File srcFile : group) {
+                cost += estimateCost(srcFile);
+            }
+            costs.put(group, cost);
+        }
+        Collections.sort(groups, new Comparator<List<File>>() {
+            @Override
+            public int compare(List<File> o1, List<File> o2) {
+                return Long.compare(costs.get(o2), costs.get(o1));
+            }
+        });
+    }
+
+    /**
+     * Gets name of the dictionary rule of the item.
+     *
+     * @param extLessFilename filename without extension (dictionary key)
+     * @return predefined object name, CUSTOM or UNUSED if it's not in the
+     * dictionary
+     */
+    private String getRule(String extLessFilename) {
+        Obj obj = DICTIONARY.get(extLessFilename);
+        if (obj == null) {
+            return PredefObj.UNUSED.name();
+        }
+        return (obj instanceof PredefObj) ? ((PredefObj) obj).name() : "CUSTOM";
+    }
+
+    /**
+     * Describes settings the output depends on besides rule, color and
+     * label.
+     *
+     * @param labeled is file labeled (font matters only then)
+     * @return style description
+     */
+    private String getStyle(boolean labeled) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("outline=").append(config.isDrawOutline());
+        sb.append(";fill=").append(config.isFillInterior());
+        sb.append(";width=").append(config.getOutlineWidth());
+        sb.append(";glow=").append(config.getGlowRadius());
+        sb.append(";trim=").append(config.isTrimFrames());
+        if (labeled) {
+            sb.append(";font=").append(myFont.getName()).append(',').append(myFont.getStyle()).append(',').append(myFont.getSize());
+            sb.append(";bitmap=").append(config.isBitmapLabels());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Gets path of the source file in the manifest.
+     *
+     * @param srcFile source file
+     * @return path relative to the input directory
+     */
+    private String getManifestPath(File srcFile) {
+        return config.getInDir().toPath().relativize(srcFile.toPath()).toString().replace('\\', '/');
+    }
+
+    /**
+     * Gets content hash of the source file (recorded in the manifest if the
+     * build is incremental).
+     *
+     * @param srcFile source file
+     * @return hex digest (null if file cannot be read)
+     */
+    private String getContentHash(File srcFile) {
+        if (manifest != null) {
+            BuildManifest.Entry entry = manifest.getCurrent(getManifestPath(srcFile));
+            if (entry != null) {
+                return entry.getContentHash();
+            }
+        }
+        return BuildManifest.hashContent(srcFile);
+    }
+
+    /**
+     * Gets mask cache file of the FRM.
+     *
+     * @param srcFile source FRM
+     * @return cache file or null if masks are not cached for the file
+     */
+    private File getMaskFile(File srcFile) {
+        final String extLessFilename = srcFile.getName().replaceFirst("[.][^.]+$", "");
+        if (!config.isMaskCache() || !isIndexedTransform(extLessFilename)) {
+            return null;
+        }
+        final String contentHash = getContentHash(srcFile);
+        if (contentHash == null) {
+            return null;
+        }
+        final File maskFile = MaskCache.getFile(new File(config.getOutDir(), MaskCache.DIR_NAME), contentHash, Math.max(config.getOutlineWidth(), 1));
+        usedMaskFiles.add(maskFile.getName());
+        return maskFile;
+    }
+
+    /**
+     * Describes source file with its content hash and resolved style.
+     *
+     * @param srcFile source file
+     * @param contentHash content hash of the source file
+     * @return manifest entry
+     */
+    private BuildManifest.Entry createEntry(File srcFile, String contentHash) {
+        final String extLessFilename = srcFile.getName().replaceFirst("[.][^.]+$", "");
+        final boolean labeled = isLabeled(extLessFilename);
+        return new BuildManifest.Entry(contentHash, srcFile.length(), srcFile.lastModified(),
+                getRule(extLessFilename),
+                Integer.toHexString(getItemColor(extLessFilename).getRGB()),
+                labeled ? MAPPED_BY.getOrDefault(extLessFilename, extLessFilename) : "",
+                BuildManifest.hashStyle(getStyle(labeled)));
+    }
+
+    /**
+     * Gets signature of the group output: type, content and resolved style
+     * (color, label, settings) of each source file. Groups with the same
+     * signature have the same output.
+     *
+     * @param group group of source files with the same output
+     * @return signature (null if some file cannot be read)
+     */
+    private String getSignature(List<File> group) {
+        StringBuilder sb = new StringBuilder();
+        for (File srcFile : group) {
+            final String contentHash = getContentHash(srcFile);
+            if (contentHash == null) {
+                return null;
+            }
+            final BuildManifest.Entry entry = createEntry(srcFile, contentHash);
+            sb.append(srcFile.getName().replaceFirst("^.*[.]", "").toLowerCase()).append(' ')
+                    .append(contentHash).append(' ')
+                    .append(entry.getColor()).append(' ')
+                    .append(entry.getLabel()).append(' ')
+                    .append(entry.getStyleHash()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Finds groups with the same output as some previous group (same content
+     * and style of the source files).
+     *
+     * @param groups groups of source files with the same output
+     * @param duplicates map to put each duplicate group in (with the group it
+     * duplicates)
+     * @return unique groups (which have to be processed)
+     */
+    private List<List<File>> deduplicate(List<List<File>> groups, Map<List<File>, List<File>> duplicates) {
+        final Map<String, List<File>> unique = new HashMap<>();
+        final List<List<File>> result = new ArrayList<>();
+        int count = 0;
+        for (List<File> group : groups) {
+            final String signature = (getOutFile(group.get(0)) == null) ? null : getSignature(group);
+            final List<File> original = (signature == null) ? null : unique.get(signature);
+            if (original != null) {
+                duplicates.put(group, original);
+                count += group.size();
+            } else {
+                if (signature != null) {
+                    unique.put(signature, group);
+                }
+                result.add(group);
+            }
+        }
+        FO2HLogger.reportInfo("Deduplicated " + count + " files..", null);
         return result;
     }
 
+    /**
+     * Writes duplicate groups by copying output of the group they duplicate
+     * (group is processed if that output wasn't written in this run).
+     *
+     * @param duplicates duplicate groups (with the group they duplicate)
+     * @param total total number of source files
+     */
+    private void copyDuplicates(Map<List<File>, List<File>> duplicates, int total) {
+        for (Map.Entry<List<File>, List<File>> e : duplicates.entrySet()) {
+            if (stopped) {
+                return;
+            }
+            final File outFile = getOutFile(e.getKey().get(0));
+            final File original = getOutFile(e.getValue().get(0));
+            if (!written.containsAll(e.getValue())) {
+                processGroup(e.getKey(), total);
+                continue;
+            }
+            try {
+                outFile.getParentFile().mkdirs();
+                Files.copy(original.toPath(), outFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                written.addAll(e.getKey());
+            } catch (IOException ex) {
+                FO2HLogger.reportError(ex.getMessage(), ex);
+            }
+            for (int i = 0; i < e.getKey().size(); i++) {
+                fileDone(total);
+            }
+        }
+    }
+
+    /**
+     * Commits manifest entries of the groups which output is written (each
+     * source file of the group is written). Entries of the other groups are
+     * not saved, so they are processed again in the next run.
+     *
+     * @param groups processed groups of source files
+     */
+    private void commitWritten(List<List<File>> groups) {
+        for (List<File> group : groups) {
+            if (written.containsAll(group)) {
+                for (File srcFile : group) {
+                    manifest.commit(getManifestPath(srcFile));
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes groups in which every source file has the same content, rule,
+     * color, label and style as in the previous run (and the output still
+     * exists). Skipped files are reported as processed.
+     *
+     * @param groups groups of source files with the same output
+     * @param manifest manifest with entries of the previous run
+     * @param total total number of source files
+     * @return groups which have to be processed
+     */
+    private List<List<File>> skipUnchanged(List<List<File>> groups, BuildManifest manifest, int total) {
+        // number of files per changed part
+        final Map<String, Integer> changes = new LinkedHashMap<>();
+        final List<List<File>> result = new ArrayList<>();
+        int skipped = 0;
+        for (List<File> group : groups) {
+            final File outFile = getOutFile(group.get(0));
+            if (outFile == null) {
+                result.add(group);
+                continue;
+            }
+            boolean unchanged = outFile.exists();
+            for (File srcFile : group) {
+                final String path = getManifestPath(srcFile);
+                final String contentHash = manifest.getContentHash(path, srcFile);
+                if (contentHash == null) {
+                    unchanged = false;
+                    continue;
+                }
+                // all the entries are recorded, even if group is already changed
+                List<String> changed = manifest.put(path, createEntry(srcFile, contentHash));
+                for (String part : changed) {
+                    changes.put(part, changes.getOrDefault(part, 0) + 1);
+                }
+                unchanged &= changed.isEmpty();
+            }
+            if (unchanged) {
+                skipped += group.size();
+                for (File srcFile : group) {
+                    manifest.commit(getManifestPath(srcFile));
+                    // masks of skipped FRMs are still used
+                    if (srcFile.getName().toLowerCase().endsWith(".frm")) {
+                        getMaskFile(srcFile);
+                    }
+                    fileDone(total);
+                }
+            } else {
+                result.add(group);
+            }
+        }
+        FO2HLogger.reportInfo("Skipping " + skipped + " unchanged files..", null);
+        if (!changes.isEmpty()) {
+            FO2HLogger.reportInfo("Changed files " + changes, null);
+        }
+        return result;
+    }
+
+    /**
+     * Process group of source files (in order) and report the progress.
+     *
+     * @param group group of source files with the same output
+     * @param total total number of source files
+     */
+    private void processGroup(List<File> group, int total) {
+        for (File srcFile : group) {
+            if (stopped) {
+                return;
+            }
+            process(srcFile);
+            fileDone(total);
+        }
+    }
+
+    /**
+     * Report that one more source file is processed.
+     *
+     * @param total total number of source files
+     */
+    void fileDone(int total) {
+        final int done = processed.incrementAndGet();
+        // workers finish in any order, progress is only reported forward
+        synchronized (progressLock) {
+            if (done > reported) {
+                float oldProgress = 100.0f * reported / total;
+                reported = done;
+                firePropertyChange("progress", oldProgress, 100.0f * done / total);
+            }
+        }
+    }
+
     /**
      * Start highlighter working.
      *
@@ -386,175 +1438,92 @@ public class Highligther extends SwingWorker<Void, Void> {
         }
 
         stopped = false;
+        processed.set(0);
+        written.clear();
+        usedMaskFiles.clear();
+        synchronized (progressLock) {
+            reported = 0;
+        }
 
         FO2HLogger.reportInfo("Starting Higlighter work", null);
         if (config.getInDir().isDirectory()) {
-            File[] fileArray = config.isRecursive() ? buildTree(config.getInDir()) : config.getInDir().listFiles();
+            final File[] fileArray = config.isRecursive() ? buildTree(config.getInDir()) : config.getInDir().listFiles();
+            List<List<File>> groups = groupByOutput(fileArray);
+            final int threads = (config.getWorkerThreads() > 0) ? config.getWorkerThreads() : Runtime.getRuntime().availableProcessors();
             FO2HLogger.reportInfo("Processing " + fileArray.length + " files..", null);
-            for (File srcFile : fileArray) {
-                if (stopped) {
-                    FO2HLogger.reportInfo("Highlighter stopped!", null);
-                    break;
+            manifest = null;
+            if (config.isIncrementalBuild()) {
+                manifest = new BuildManifest(new File(config.getOutDir(), BuildManifest.FILE_NAME));
+                manifest.load();
+                groups = skipUnchanged(groups, manifest, fileArray.length);
+            }
+            // identical groups are processed once, others copy the output
+            final Map<List<File>, List<File>> duplicates = new IdentityHashMap<>();
+            if (config.isDeduplicate()) {
+                groups = deduplicate(groups, duplicates);
+            }
+            if (config.isPipelined() || threads > 1) {
+                // biggest first, so no big FRM is left running alone at the end
+                sortByCost(groups);
+            }
+            if (config.isPipelined()) {
+                final int effectThreads = (config.getEffectThreads() > 0) ? config.getEffectThreads() : Runtime.getRuntime().availableProcessors();
+                FO2HLogger.reportInfo("Using pipeline with " + config.getDecodeThreads() + " decode, "
+                        + effectThreads + " effect and " + config.getWriteThreads() + " write threads", null);
+                Pipeline pipeline = new Pipeline(this, config.getDecodeThreads(), effectThreads,
+                        config.getWriteThreads(), config.getQueueCapacity());
+                try {
+                    pipeline.run(groups, fileArray.length);
+                } catch (InterruptedException ex) {
+                    stopped = true;
+                    FO2HLogger.reportError(ex.getMessage(), ex);
                 }
-
-                // if file is fofrm copy it to the output                                      
-                if (srcFile.getName().toLowerCase().endsWith(".fofrm")) {
-                    File dstFile = null;
-                    if (config.isRecursive()) {
-                        File dirs = srcFile;
-                        StringBuilder sb = new StringBuilder();
-                        while (!dirs.equals(config.getInDir())) {
-                            dirs = dirs.getParentFile();
-                            sb.insert(0, dirs.getName());
-                            sb.insert(0, File.separator);
-                        }
-                        dstFile = new File(config.getOutDir() + File.separator + sb.toString() + File.separator + srcFile.getName().replaceFirst("[.][^.]+$", ".FRM"));
-                    } else {
-                        dstFile = new File(config.getOutDir() + File.separator + srcFile.getName().replaceFirst("[.][^.]+$", ".FRM"));
-                    }
-                    try {
-                        Files.copy(srcFile.toPath(), dstFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-                    } catch (IOException ex) {
-                        FO2HLogger.reportError(ex.getMessage(), ex);
-                    }
-                } else { // if it's png or FRM file
-                    // get extensionless filename
-                    String extLessFilename = srcFile.getName().replaceFirst("[.][^.]+$", "");
-                    //----------------------------------------------------------
-                    if (srcFile.getName().toLowerCase().endsWith(".frm")) {
-                        FRM srcFRM = new FRM(srcFile);
-                        //-----------------------------------------------------
-                        List<ImageData> frames = srcFRM.getFrames();
-                        final BufferedImage[] imgSrc = new BufferedImage[frames.size()];
-                        final BufferedImage[] imgDst = new BufferedImage[frames.size()];
-                        final int[] frameOffsetsX = new int[frames.size()];
-                        final int[] frameOffsetsY = new int[frames.size()];
-
-                        for (int i = 0; i < frames.size(); i++) {
-                            imgSrc[i] = frames.get(i).toBufferedImage();
-                            imgDst[i] = new BufferedImage(imgSrc[i].getWidth() + 2, imgSrc[i].getHeight() + 2, BufferedImage.TYPE_INT_ARGB);
-
-                            Graphics2D graphics2D = imgDst[i].createGraphics();
-                            graphics2D.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_QUALITY);
-                            graphics2D.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-                            graphics2D.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-                            graphics2D.setRenderingHint(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_ENABLE);
-                            graphics2D.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
-                            graphics2D.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
-
-                            graphics2D.drawImage(imgSrc[i], 1, 1, null);
-
-                            // blue color removal
-                            removeBlue(imgDst[i]);
-                            // outline & fill interior effect
-                            createOutline(imgDst[i], getItemColor(extLessFilename), config.isFillInterior(), config.isDrawOutline());
-
-                            // label
-                            Obj obj = DICTIONARY.get(extLessFilename);
-                            boolean labeled = config.isPutLabels() && obj != null && obj.isLabeled();
-                            if (labeled) {
-                                imgDst[i] = putLabel(imgDst[i], myFont, MAPPED_BY.getOrDefault(extLessFilename, extLessFilename), getItemColor(extLessFilename), config.isFillInterior());
-                            }
-
-                            frameOffsetsX[i] = frames.get(i).getOffsetX();
-                            frameOffsetsY[i] = frames.get(i).getOffsetY();
-                        }
-                        //-------------------------------------------------------
-                        FRM dstFRM = new FRM(
-                                srcFRM.getVersion(),
-                                srcFRM.getFps(),
-                                srcFRM.getActionFrame(),
-                                srcFRM.getFramesPerDirection(),
-                                srcFRM.getShiftX(),
-                                srcFRM.getShiftY(),
-                                imgDst,
-                                frameOffsetsX,
-                                frameOffsetsY
-                        );
-
-                        File outFile = null;
-                        if (config.isRecursive()) {
-                            File dirs = srcFile;
-                            StringBuilder sb = new StringBuilder();
-                            while (!dirs.equals(config.getInDir())) {
-                                dirs = dirs.getParentFile();
-                                sb.insert(0, dirs.getName());
-                                sb.insert(0, File.separator);
-                            }
-                            outFile = new File(config.getOutDir() + File.separator + sb.toString() + File.separator + srcFile.getName().replaceFirst("[.][^.]+$", ".FRM"));
-                        } else {
-                            outFile = new File(config.getOutDir() + File.separator + srcFile.getName().replaceFirst("[.][^.]+$", ".FRM"));
-                        }
-
-                        if (outFile.exists()) {
-                            outFile.delete();
+            } else if (threads <= 1) {
+                for (List<File> group : groups) {
+                    processGroup(group, fileArray.length);
+                }
+            } else {
+                FO2HLogger.reportInfo("Using " + threads + " worker threads", null);
+                ExecutorService executor = Executors.newFixedThreadPool(threads);
+                List<Future<?>> futures = new ArrayList<>();
+                for (final List<File> group : groups) {
+                    futures.add(executor.submit(new Runnable() {
+                        @Override
+                        public void run() {
+                            processGroup(group, fileArray.length);
                         }
-
-                        outFile.mkdirs();
-
-                        dstFRM.write(outFile);
-                    } else if (srcFile.getName().toLowerCase().endsWith(".png")) {
-                        BufferedImage imgSrc = null;
-                        //------------------------------------------------------
+                    }));
+                }
+                executor.shutdown();
+                try {
+                    for (Future<?> future : futures) {
                         try {
-                            imgSrc = ImageIO.read(srcFile);
-                        } catch (IOException ex) {
-                            FO2HLogger.reportError(ex.getMessage(), ex);
-                        }
-                        //------------------------------------------------------
-                        if (imgSrc != null) {
-                            BufferedImage imgDst = new BufferedImage(imgSrc.getWidth() + 2, imgSrc.getHeight() + 2, BufferedImage.TYPE_INT_ARGB);
-                            Graphics2D graphics2D = imgDst.createGraphics();
-                            graphics2D.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_QUALITY);
-                            graphics2D.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-                            graphics2D.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-                            graphics2D.setRenderingHint(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_ENABLE);
-                            graphics2D.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
-                            graphics2D.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
-
-                            graphics2D.drawImage(imgSrc, 1, 1, null);
-                            // blue color removal
-                            removeBlue(imgDst);
-                            // outline & fill interior effect
-                            createOutline(imgDst, getItemColor(extLessFilename), config.isFillInterior(), config.isDrawOutline());
-
-                            // label
-                            Obj obj = DICTIONARY.get(extLessFilename);
-                            if (config.isPutLabels() && obj != null && obj.isLabeled()) {
-                                imgDst = putLabel(imgDst, myFont, MAPPED_BY.getOrDefault(extLessFilename, extLessFilename), getItemColor(extLessFilename), config.isFillInterior());
-                            }
-
-                            //--------------------------------------------------
-                            File outFile = null;
-                            if (config.isRecursive()) {
-                                File dirs = srcFile;
-                                StringBuilder sb = new StringBuilder();
-                                while (!dirs.equals(config.getInDir())) {
-                                    dirs = dirs.getParentFile();
-                                    sb.insert(0, dirs.getName());
-                                    sb.insert(0, File.separator);
-                                }
-                                outFile = new File(config.getOutDir() + File.separator + sb.toString() + File.separator + srcFile.getName().replaceFirst("[.][^.]+$", ".png"));
-                            } else {
-                                outFile = new File(config.getOutDir() + File.separator + srcFile.getName().replaceFirst("[.][^.]+$", ".png"));
-                            }
-
-                            if (outFile.exists()) {
-                                outFile.delete();
-                            }
-
-                            outFile.mkdirs();
-
-                            try {
-                                ImageIO.write(imgDst, "png", outFile);
-                            } catch (IOException ex) {
-                                FO2HLogger.reportError(ex.getMessage(), ex);
-                            }
+                            future.get();
+                        } catch (ExecutionException ex) {
+                            FO2HLogger.reportError(ex.getMessage(), ex.getCause());
                         }
                     }
+                } catch (InterruptedException ex) {
+                    stopped = true;
+                    executor.shutdownNow();
+                    FO2HLogger.reportError(ex.getMessage(), ex);
                 }
-                progress += 100.0f / fileArray.length;
-                firePropertyChange("progress", oldProgress, progress);
+            }
+
+            copyDuplicates(duplicates, fileArray.length);
+
+            if (manifest != null) {
+                // only written groups are committed (even on stop), others are processed again
+                commitWritten(groups);
+                commitWritten(new ArrayList<>(duplicates.keySet()));
+                manifest.save();
+            }
+            if (stopped) {
+                FO2HLogger.reportInfo("Highlighter stopped!", null);
+            } else if (config.isMaskCache()) {
+                // every source file is seen, masks of the others are orphaned
+                final int pruned = MaskCache.prune(new File(config.getOutDir(), MaskCache.DIR_NAME), usedMaskFiles);
+                FO2HLogger.reportInfo("Pruned " + pruned + " cached masks..", null);
             }
         }
 
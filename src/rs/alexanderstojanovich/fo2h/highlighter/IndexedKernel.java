@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2021 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.fo2h.highlighter;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import rs.alexanderstojanovich.fo2h.frm.ImageData;
+import rs.alexanderstojanovich.fo2h.frm.Palette;
+import rs.alexanderstojanovich.fo2h.frm.RLEImageData;
+import rs.alexanderstojanovich.fo2h.util.BitMask;
+import rs.alexanderstojanovich.fo2h.util.DistanceTransform;
+
+/**
+ * Outline and fill interior effect computed directly on palette indices of
+ * FRM frame (without conversion to ARGB and back). Gives the same frame as
+ * blue removal, outline and fill interior on ARGB image followed by palette
+ * quantization.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class IndexedKernel {
+
+    // is palette entry opaque (not transparent nor blue)
+    private final boolean[] opaque = new boolean[256];
+    // result index of each opaque palette entry (same or tinted color)
+    private final byte[] recolor = new byte[256];
+    // palette index of the outline
+    private final byte outline;
+
+    private final boolean drawOutline;
+    // outline width in pixels
+    private final int outlineWidth;
+
+    /**
+     * Creates new kernel for the style (with outline 1 pixel wide)
+     *
+     * @param outlineColor color of the outline (and tint of the interior)
+     * @param fillInterior fill interior of the outline
+     * @param drawOutline draw outline around the image
+     */
+    public IndexedKernel(Color outlineColor, boolean fillInterior, boolean drawOutline) {
+        this(outlineColor, fillInterior, drawOutline, 1);
+    }
+
+    /**
+     * Creates new kernel for the style
+     *
+     * @param outlineColor color of the outline (and tint of the interior)
+     * @param fillInterior fill interior of the outline
+     * @param drawOutline draw outline around the image
+     * @param outlineWidth outline width in pixels
+     */
+    public IndexedKernel(Color outlineColor, boolean fillInterior, boolean drawOutline, int outlineWidth) {
+        final int[] colors = Palette.getColors();
+        final byte[] lookup = Palette.getLookup();
+        for (int i = 1; i < 256; i++) {
+            // blue is removed (it's transparent for Fallout)
+            opaque[i] = (colors[i] | 0xFF000000) != Color.BLUE.getRGB();
+            int rgb = fillInterior ? Highligther.tint(colors[i], outlineColor) : colors[i];
+            recolor[i] = lookup[rgb & 0xFFFFFF];
+        }
+        this.outline = ((outlineColor.getRGB() >>> 24) != 0) ? lookup[outlineColor.getRGB() & 0xFFFFFF] : 0;
+        this.drawOutline = drawOutline;
+        this.outlineWidth = Math.max(outlineWidth, 1);
+    }
+
+    /**
+     * Applies the effect on the frame. Result is bigger by outline width on
+     * each side (to make room for the outline). Only opaque bounds of the
+     * frame are visited.
+     *
+     * @param frame source frame
+     * @return result frame
+     */
+    public ImageData apply(ImageData frame) {
+        final int width = frame.getWidth();
+        final int height = frame.getHeight();
+        final int dstWidth = width + 2 * outlineWidth;
+        final int dstHeight = height + 2 * outlineWidth;
+        final byte[] src = frame.getData();
+        ImageData result = new ImageData(dstWidth, dstHeight, frame.getOffsetX(), frame.getOffsetY());
+        final byte[] dst = result.getData();
+        // only opaque bounds (with outline around) are processed
+        final Rectangle bounds = frame.getOpaqueBounds();
+        if (bounds.isEmpty()) {
+            return result;
+        }
+        // mask pixel (mx, my) is result pixel (bounds.x + mx, bounds.y + my)
+        final BitMask mask = new BitMask(bounds.width + 2 * outlineWidth, bounds.height + 2 * outlineWidth);
+        for (int y = bounds.y; y < bounds.y + bounds.height; y++) {
+            for (int x = bounds.x; x < bounds.x + bounds.width; x++) {
+                int index = src[y * width + x] & 0xFF;
+                if (opaque[index]) {
+                    mask.set(x - bounds.x + outlineWidth, y - bounds.y + outlineWidth);
+                    dst[(y + outlineWidth) * dstWidth + x + outlineWidth] = recolor[index];
+                }
+            }
+        }
+        if (drawOutline) {
+            outlineRing(mask).fill(dst, dstWidth, bounds.x, bounds.y, outline);
+        }
+        return result;
+    }
+
+    /**
+     * Computes outline mask of the frame (same for each color and fill). Ring
+     * is computed even if outline is not drawn.
+     *
+     * @param frame source frame
+     * @return outline mask of the frame
+     */
+    public OutlineMask mask(ImageData frame) {
+        final int width = frame.getWidth();
+        final int dstWidth = width + 2 * outlineWidth;
+        final int dstHeight = frame.getHeight() + 2 * outlineWidth;
+        final byte[] src = frame.getData();
+        ImageData interior = new ImageData(dstWidth, dstHeight, frame.getOffsetX(), frame.getOffsetY());
+        final byte[] dst = interior.getData();
+        final Rectangle bounds = frame.getOpaqueBounds();
+        if (bounds.isEmpty()) {
+            return new OutlineMask(interior, null, 0, 0);
+        }
+        final BitMask mask = new BitMask(bounds.width + 2 * outlineWidth, bounds.height + 2 * outlineWidth);
+        for (int y = bounds.y; y < bounds.y + bounds.height; y++) {
+            for (int x = bounds.x; x < bounds.x + bounds.width; x++) {
+                int index = src[y * width + x] & 0xFF;
+                if (opaque[index]) {
+                    mask.set(x - bounds.x + outlineWidth, y - bounds.y + outlineWidth);
+                    dst[(y + outlineWidth) * dstWidth + x + outlineWidth] = (byte) index;
+                }
+            }
+        }
+        return new OutlineMask(interior, outlineRing(mask), bounds.x, bounds.y);
+    }
+
+    /**
+     * Applies the effect on the outline mask (pure per-pixel recolor). Result
+     * is the same as for the frame the mask was computed from.
+     *
+     * @param mask outline mask of the frame
+     * @return result frame
+     */
+    public ImageData apply(OutlineMask mask) {
+        final ImageData interior = mask.getInterior();
+        ImageData result = new ImageData(interior.getWidth(), interior.getHeight(), interior.getOffsetX(), interior.getOffsetY());
+        final byte[] src = interior.getData();
+        final byte[] dst = result.getData();
+        for (int e = 0; e < src.length; e++) {
+            dst[e] = recolor[src[e] & 0xFF];
+        }
+        if (drawOutline && mask.getRing() != null) {
+            mask.getRing().fill(dst, interior.getWidth(), mask.getRingX(), mask.getRingY(), outline);
+        }
+        return result;
+    }
+
+    /**
+     * Applies the effect on the compact frame (only spans of non-transparent
+     * pixels are visited). Result is the same as for (dense) frame.
+     *
+     * @param frame source frame
+     * @return result frame
+     */
+    public ImageData apply(RLEImageData frame) {
+        final int dstWidth = frame.getWidth() + 2 * outlineWidth;
+        final int dstHeight = frame.getHeight() + 2 * outlineWidth;
+        ImageData result = new ImageData(dstWidth, dstHeight, frame.getOffsetX(), frame.getOffsetY());
+        final byte[] dst = result.getData();
+        final Rectangle bounds = frame.getOpaqueBounds();
+        if (bounds.isEmpty()) {
+            return result;
+        }
+        final BitMask mask = new BitMask(bounds.width + 2 * outlineWidth, bounds.height + 2 * outlineWidth);
+        final byte[] src = frame.getData();
+        RLEImageData.Cursor cursor = frame.cursor();
+        while (cursor.next()) {
+            final int y = cursor.getY();
+            final int pos = cursor.getDataPos();
+            for (int i = 0; i < cursor.getLength(); i++) {
+                int index = src[pos + i] & 0xFF;
+                if (opaque[index]) {
+                    final int x = cursor.getX() + i;
+                    mask.set(x - bounds.x + outlineWidth, y - bounds.y + outlineWidth);
+                    dst[(y + outlineWidth) * dstWidth + x + outlineWidth] = recolor[index];
+                }
+            }
+        }
+        if (drawOutline) {
+            outlineRing(mask).fill(dst, dstWidth, bounds.x, bounds.y, outline);
+        }
+        return result;
+    }
+
+    /**
+     * Computes outline pixels around the opaque mask
+     *
+     * @param mask opaque mask (covering part of the result)
+     * @return outline ring (same size and position as the mask)
+     */
+    private BitMask outlineRing(BitMask mask) {
+        if (outlineWidth > 1) {
+            // thick outline from the distance to the nearest opaque pixel
+            final BitMask ring = new BitMask(mask.getWidth(), mask.getHeight());
+            final int[] dist = DistanceTransform.squaredDistance(mask);
+            for (int my = 0; my < mask.getHeight(); my++) {
+                for (int mx = 0; mx < mask.getWidth(); mx++) {
+                    int e = my * mask.getWidth() + mx;
+                    if (dist[e] != 0 && Highligther.isInOutline(dist[e], outlineWidth)) {
+                        ring.set(mx, my);
+                    }
+                }
+            }
+            return ring;
+        }
+        // transparent pixel next to opaque one is outline
+        final BitMask ring = mask.dilate();
+        ring.andNot(mask);
+        return ring;
+    }
+
+}
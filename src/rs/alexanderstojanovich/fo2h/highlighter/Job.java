@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2021 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.fo2h.highlighter;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.List;
+import rs.alexanderstojanovich.fo2h.frm.FRM;
+import rs.alexanderstojanovich.fo2h.frm.RLEImageData;
+
+/**
+ * Single source file passing through decode, effect and write stage.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class Job {
+
+    public static enum Type {
+        FOFRM, FRM, PNG, NONE
+    }
+
+    private final File srcFile;
+    private final File outFile;
+    private final Type type;
+
+    // decoded source (FRM or PNG)
+    private FRM srcFRM;
+    private BufferedImage srcImage;
+    // run-length encoded FRM frames (if compact frames are used)
+    private List<RLEImageData> srcCompactFrames;
+    // outline masks (loaded from cache or computed with the effects)
+    private MaskCache masks;
+    // cache file masks are written to (null if they're loaded from it)
+    private File maskFile;
+
+    // result of the effects (PNG only, FRM frames are streamed when written)
+    private BufferedImage dstImage;
+
+    /**
+     * Creates new job for the source file
+     *
+     * @param srcFile source file
+     * @param outFile output file (null if source is not processed)
+     */
+    public Job(File srcFile, File outFile) {
+        this.srcFile = srcFile;
+        this.outFile = outFile;
+        final String name = srcFile.getName().toLowerCase();
+        if (outFile == null) {
+            this.type = Type.NONE;
+        } else if (name.endsWith(".fofrm")) {
+            this.type = Type.FOFRM;
+        } else if (name.endsWith(".frm")) {
+            this.type = Type.FRM;
+        } else if (name.endsWith(".png")) {
+            this.type = Type.PNG;
+        } else {
+            this.type = Type.NONE;
+        }
+    }
+
+    public File getSrcFile() {
+        return srcFile;
+    }
+
+    public File getOutFile() {
+        return outFile;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public FRM getSrcFRM() {
+        return srcFRM;
+    }
+
+    public void setSrcFRM(FRM srcFRM) {
+        this.srcFRM = srcFRM;
+    }
+
+    public BufferedImage getSrcImage() {
+        return srcImage;
+    }
+
+    public void setSrcImage(BufferedImage srcImage) {
+        this.srcImage = srcImage;
+    }
+
+    public List<RLEImageData> getSrcCompactFrames() {
+        return srcCompactFrames;
+    }
+
+    public void setSrcCompactFrames(List<RLEImageData> srcCompactFrames) {
+        this.srcCompactFrames = srcCompactFrames;
+    }
+
+    public MaskCache getMasks() {
+        return masks;
+    }
+
+    public void setMasks(MaskCache masks) {
+        this.masks = masks;
+    }
+
+    public File getMaskFile() {
+        return maskFile;
+    }
+
+    public void setMaskFile(File maskFile) {
+        this.maskFile = maskFile;
+    }
+
+    public BufferedImage getDstImage() {
+        return dstImage;
+    }
+
+    public void setDstImage(BufferedImage dstImage) {
+        this.dstImage = dstImage;
+    }
+
+}
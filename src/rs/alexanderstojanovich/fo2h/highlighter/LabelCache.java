@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2021 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.fo2h.highlighter;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Bounded LRU cache of pre-rendered labels (box, interior and text) with
+ * their metrics. Many files share the same label and all frames of one FRM
+ * share one, so text is measured and rasterized once per style.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class LabelCache {
+
+    // maximum number of cached labels
+    public static final int CAPACITY = 64;
+
+    private static final Map<Key, Label> CACHE = new LinkedHashMap<Key, Label>(CAPACITY, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Label> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+
+    /**
+     * Rendered label. Bitmap is shared and must not be modified.
+     */
+    public static class Label {
+
+        private final BufferedImage image;
+        private final int width;
+        private final int height;
+
+        private Label(BufferedImage image, int width, int height) {
+            this.image = image;
+            this.width = width;
+            this.height = height;
+        }
+
+        /**
+         * Gets label bitmap (transparent background, box is at 1, 1). Bitmap
+         * is larger than the box so glyphs overhanging the box are kept.
+         *
+         * @return label bitmap
+         */
+        public BufferedImage getImage() {
+            return image;
+        }
+
+        /**
+         * Gets rounded width of the label text.
+         *
+         * @return text width
+         */
+        public int getWidth() {
+            return width;
+        }
+
+        /**
+         * Gets rounded height of the label text.
+         *
+         * @return text height
+         */
+        public int getHeight() {
+            return height;
+        }
+
+    }
+
+    private static class Key {
+
+        private final String label;
+        private final Font font;
+        private final int color;
+        private final boolean fillInterior;
+
+        private Key(String label, Font font, Color color, boolean fillInterior) {
+            this.label = label;
+            this.font = font;
+            this.color = color.getRGB();
+            this.fillInterior = fillInterior;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 7;
+            hash = 53 * hash + Objects.hashCode(this.label);
+            hash = 53 * hash + Objects.hashCode(this.font);
+            hash = 53 * hash + this.color;
+            hash = 53 * hash + (this.fillInterior ? 1 : 0);
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return this.color == other.color
+                    && this.fillInterior == other.fillInterior
+                    && Objects.equals(this.label, other.label)
+                    && Objects.equals(this.font, other.font);
+        }
+
+    }
+
+    /**
+     * Gets rendered label (rendered and cached if it's not cached).
+     *
+     * @param font font of the label
+     * @param label label text
+     * @param color color of the label
+     * @param fillInterior fill interior of the label box
+     * @return rendered label
+     */
+    public static Label get(Font font, String label, Color color, boolean fillInterior) {
+        final Key key = new Key(label, font, color, fillInterior);
+        Label result;
+        synchronized (CACHE) {
+            result = CACHE.get(key);
+        }
+        if (result == null) {
+            // rendered outside of the lock, same label might be rendered twice
+            result = render(font, label, color, fillInterior);
+            synchronized (CACHE) {
+                CACHE.put(key, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Clears the cache.
+     */
+    public static void clear() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+
+    /**
+     * Sets rendering hints used for labels.
+     *
+     * @param g2d graphics to set hints of
+     */
+    public static void setRenderingHints(Graphics2D g2d) {
+        g2d.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_QUALITY);
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g2d.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+        g2d.setRenderingHint(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_ENABLE);
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        g2d.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+    }
+
+    private static Label render(Font font, String label, Color color, boolean fillInterior) {
+        FontRenderContext frc = new FontRenderContext(null, true, true);
+
+        Rectangle2D bounds = font.getStringBounds(label, frc);
+        int fntWidth = (int) Math.round(bounds.getWidth());
+        int fntHeight = (int) Math.round(bounds.getHeight());
+
+        // margin of font size for glyphs overhanging the box
+        final int margin = font.getSize();
+        BufferedImage image = new BufferedImage(fntWidth + 2 + margin, fntHeight + 2 + margin, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = image.createGraphics();
+        setRenderingHints(g2d);
+
+        g2d.setColor(color);
+        g2d.drawRoundRect(1, 1, fntWidth, fntHeight, 2, 2);
+        if (fillInterior) {
+            float luma = (color.getRed() * Highligther.LUMA_RED_COEFF + color.getGreen() * Highligther.LUMA_GREEN_COEFF + color.getBlue() * Highligther.LUMA_BLUE_COEFF) / 255.0f;
+            Color grey = new Color(0.5f * luma, 0.5f * luma, 0.5f * luma, 1.0f);
+            g2d.setColor(grey);
+            g2d.fillRoundRect(1, 1, fntWidth, fntHeight, 1, 1);
+        }
+        g2d.setColor(color);
+        g2d.setFont(font);
+
+        g2d.translate(0, -Math.round(bounds.getY()));
+        g2d.drawString(new String(label.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8), 1.0f, 1.0f);
+        g2d.dispose();
+
+        return new Label(image, fntWidth, fntHeight);
+    }
+
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2021 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.fo2h.highlighter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import rs.alexanderstojanovich.fo2h.frm.ImageData;
+import rs.alexanderstojanovich.fo2h.util.BitMask;
+import rs.alexanderstojanovich.fo2h.util.FO2HLogger;
+
+/**
+ * Outline masks of all the frames of one FRM, persisted in the output
+ * directory under content hash of the FRM and outline width. When only the
+ * colors change FRM is not decoded and the outline is not computed again,
+ * frames are recolored from the masks.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class MaskCache {
+
+    // directory in the output directory
+    public static final String DIR_NAME = "fo2_highlighter.cache";
+
+    private static final int MAGIC = 0x464F324D; // "FO2M"
+    private static final int VERSION = 1;
+
+    private final List<OutlineMask> masks = new ArrayList<>();
+
+    /**
+     * Gets cache file of the FRM.
+     *
+     * @param dir cache directory
+     * @param contentHash content hash of the FRM
+     * @param outlineWidth outline width
+     * @return cache file
+     */
+    public static File getFile(File dir, String contentHash, int outlineWidth) {
+        return new File(dir, contentHash + "_" + outlineWidth + ".mask");
+    }
+
+    /**
+     * Reads masks from the file.
+     *
+     * @param file cache file
+     * @return masks or null if file cannot be read (or it's of other version)
+     */
+    public static MaskCache read(File file) {
+        MaskCache result = null;
+        DataInputStream dis = null;
+        try {
+            dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (dis.readInt() != MAGIC || dis.readInt() != VERSION) {
+                return null;
+            }
+            result = new MaskCache();
+            final int count = dis.readInt();
+            for (int i = 0; i < count; i++) {
+                final int width = dis.readUnsignedShort();
+                final int height = dis.readUnsignedShort();
+                ImageData interior = new ImageData(width, height, dis.readShort(), dis.readShort());
+                dis.readFully(interior.getData());
+                final int ringX = dis.readUnsignedShort();
+                final int ringY = dis.readUnsignedShort();
+                final int ringWidth = dis.readUnsignedShort();
+                final int ringHeight = dis.readUnsignedShort();
+                BitMask ring = null;
+                if (ringWidth > 0 && ringHeight > 0) {
+                    ring = new BitMask(ringWidth, ringHeight);
+                    final long[] words = ring.getWords();
+                    for (int w = 0; w < words.length; w++) {
+                        words[w] = dis.readLong();
+                    }
+                }
+                result.add(new OutlineMask(interior, ring, ringX, ringY));
+            }
+        } catch (IOException ex) {
+            FO2HLogger.reportError(ex.getMessage(), ex);
+            result = null;
+        } finally {
+            if (dis != null) {
+                try {
+                    dis.close();
+                } catch (IOException ex) {
+                    FO2HLogger.reportError(ex.getMessage(), ex);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Writes masks to the file (directory is created if it doesn't exist).
+     *
+     * @param file cache file
+     */
+    public void write(File file) {
+        file.getParentFile().mkdirs();
+        DataOutputStream dos = null;
+        try {
+            dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeInt(masks.size());
+            for (OutlineMask mask : masks) {
+                final ImageData interior = mask.getInterior();
+                dos.writeShort(interior.getWidth());
+                dos.writeShort(interior.getHeight());
+                dos.writeShort(interior.getOffsetX());
+                dos.writeShort(interior.getOffsetY());
+                dos.write(interior.getData());
+                final BitMask ring = mask.getRing();
+                dos.writeShort(mask.getRingX());
+                dos.writeShort(mask.getRingY());
+                dos.writeShort(ring == null ? 0 : ring.getWidth());
+                dos.writeShort(ring == null ? 0 : ring.getHeight());
+                if (ring != null) {
+                    for (long word : ring.getWords()) {
+                        dos.writeLong(word);
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            FO2HLogger.reportError(ex.getMessage(), ex);
+        } finally {
+            if (dos != null) {
+                try {
+                    dos.close();
+                } catch (IOException ex) {
+                    FO2HLogger.reportError(ex.getMessage(), ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes cache files which are not used anymore (FRM is changed or
+     * removed, or outline width is changed).
+     *
+     * @param dir cache directory
+     * @param used names of the cache files used in this run
+     * @return number of deleted files
+     */
+    public static int prune(File dir, Set<String> used) {
+        final File[] files = dir.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        int count = 0;
+        for (File file : files) {
+            if (file.getName().endsWith(".mask") && !used.contains(file.getName()) && file.delete()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public void add(OutlineMask mask) {
+        masks.add(mask);
+    }
+
+    public OutlineMask get(int index) {
+        return masks.get(index);
+    }
+
+    public int getFrameCount() {
+        return masks.size();
+    }
+
+}
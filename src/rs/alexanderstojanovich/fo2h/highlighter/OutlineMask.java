@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2021 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.fo2h.highlighter;
+
+import rs.alexanderstojanovich.fo2h.frm.ImageData;
+import rs.alexanderstojanovich.fo2h.util.BitMask;
+
+/**
+ * Color independent part of the effect on single frame: palette indices of
+ * the opaque pixels (their color and luma) and the outline ring around them,
+ * both in result coordinates. Effect of any color is a per-pixel recolor of
+ * the mask.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class OutlineMask {
+
+    // source palette index of opaque pixels (0 - transparent)
+    private final ImageData interior;
+    // outline pixels (null if there are none)
+    private final BitMask ring;
+    // position of the ring in the result
+    private final int ringX;
+    private final int ringY;
+
+    /**
+     * Creates new outline mask
+     *
+     * @param interior source palette index of opaque pixels (result size)
+     * @param ring outline pixels (null if there are none)
+     * @param ringX position of the ring in the result (X)
+     * @param ringY position of the ring in the result (Y)
+     */
+    public OutlineMask(ImageData interior, BitMask ring, int ringX, int ringY) {
+        this.interior = interior;
+        this.ring = ring;
+        this.ringX = ringX;
+        this.ringY = ringY;
+    }
+
+    public ImageData getInterior() {
+        return interior;
+    }
+
+    public BitMask getRing() {
+        return ring;
+    }
+
+    public int getRingX() {
+        return ringX;
+    }
+
+    public int getRingY() {
+        return ringY;
+    }
+
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2021 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.fo2h.highlighter;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import rs.alexanderstojanovich.fo2h.util.FO2HLogger;
+
+/**
+ * Staged Highlighter work. Decode, effect and write stage each run on their
+ * own threads and are connected with bounded queues, so disk and processor
+ * work overlap while full queues hold back faster stages (backpressure).
+ *
+ * Unit of the work is a group of files with the same output (which is
+ * written in order by a single write thread). Effect stage transforms PNGs
+ * only, FRM frames are transformed by the write thread while they're written
+ * (one frame at a time), so no whole transformed FRM waits in the queue.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class Pipeline {
+
+    // marks the end of the jobs between two stages
+    private static final List<Job> END = new ArrayList<>();
+
+    private final Highligther highligther;
+
+    private final int decodeThreads;
+    private final int effectThreads;
+    private final int writeThreads;
+
+    private final BlockingQueue<List<Job>> decoded;
+    private final BlockingQueue<List<Job>> transformed;
+
+    private int total;
+
+    /**
+     * Creates new pipeline for the highlighter
+     *
+     * @param highligther highlighter which does the work
+     * @param decodeThreads number of decode threads
+     * @param effectThreads number of effect threads
+     * @param writeThreads number of write threads
+     * @param queueCapacity maximum number of groups waiting between two stages
+     */
+    public Pipeline(Highligther highligther, int decodeThreads, int effectThreads, int writeThreads, int queueCapacity) {
+        this.highligther = highligther;
+        this.decodeThreads = Math.max(decodeThreads, 1);
+        this.effectThreads = Math.max(effectThreads, 1);
+        this.writeThreads = Math.max(writeThreads, 1);
+        this.decoded = new ArrayBlockingQueue<>(Math.max(queueCapacity, 1));
+        this.transformed = new ArrayBlockingQueue<>(Math.max(queueCapacity, 1));
+    }
+
+    /**
+     * Run all the stages on given groups and wait for them to finish.
+     *
+     * @param groups groups of source files with the same output
+     * @param total total number of source files (for progress)
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void run(List<List<File>> groups, int total) throws InterruptedException {
+        this.total = total;
+        final Queue<List<File>> input = new ConcurrentLinkedQueue<>(groups);
+        final AtomicInteger decodersLeft = new AtomicInteger(decodeThreads);
+        final AtomicInteger effectorsLeft = new AtomicInteger(effectThreads);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < decodeThreads; i++) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    decodeStage(input, decodersLeft);
+                }
+            }, "FO2H-Decode-" + i));
+        }
+        for (int i = 0; i < effectThreads; i++) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    effectStage(effectorsLeft);
+                }
+            }, "FO2H-Effect-" + i));
+        }
+        for (int i = 0; i < writeThreads; i++) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    writeStage();
+                }
+            }, "FO2H-Write-" + i));
+        }
+
+        for (Thread thread : threads) {
+            // stage threads never keep the JVM alive
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException ex) {
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Puts end marks in the queue (one for each thread of the next stage).
+     * If interrupted marks are only offered (never waits), as then all the
+     * stages are interrupted and the next one may be gone already.
+     *
+     * @param queue queue of the next stage
+     * @param count number of threads of the next stage
+     */
+    private static void putEnd(BlockingQueue<List<Job>> queue, int count) {
+        try {
+            for (int i = 0; i < count; i++) {
+                if (Thread.currentThread().isInterrupted()) {
+                    queue.offer(END);
+                } else {
+                    queue.put(END);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            FO2HLogger.reportError(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Drops the jobs (when stopped) returning their buffers to the pool.
+     *
+     * @param jobs jobs to drop
+     * @param from index of first job to drop
+     */
+    private static void discard(List<Job> jobs, int from) {
+        for (int i = from; i < jobs.size(); i++) {
+            Highligther.discard(jobs.get(i));
+        }
+    }
+
+    private void decodeStage(Queue<List<File>> input, AtomicInteger decodersLeft) {
+        try {
+            List<File> group;
+            while (!highligther.isStopped() && (group = input.poll()) != null) {
+                List<Job> jobs = new ArrayList<>();
+                for (File srcFile : group) {
+                    try {
+                        jobs.add(highligther.decode(srcFile));
+                    } catch (Throwable ex) {
+                        FO2HLogger.reportError(ex.getMessage(), ex);
+                        highligther.fileDone(total);
+                    }
+                }
+                try {
+                    decoded.put(jobs);
+                } catch (InterruptedException ex) {
+                    discard(jobs, 0);
+                    throw ex;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            FO2HLogger.reportError(ex.getMessage(), ex);
+        } finally {
+            // last decoder tells effect stage there are no more jobs
+            if (decodersLeft.decrementAndGet() == 0) {
+                putEnd(decoded, effectThreads);
+            }
+        }
+    }
+
+    private void effectStage(AtomicInteger effectorsLeft) {
+        try {
+            List<Job> jobs;
+            while ((jobs = decoded.take()) != END) {
+                if (highligther.isStopped()) {
+                    discard(jobs, 0);
+                    continue;
+                }
+                List<Job> result = new ArrayList<>();
+                for (Job job : jobs) {
+                    try {
+                        highligther.transform(job);
+                        result.add(job);
+                    } catch (Throwable ex) {
+                        FO2HLogger.reportError(ex.getMessage(), ex);
+                        Highligther.discard(job);
+                        highligther.fileDone(total);
+                    }
+                }
+                try {
+                    transformed.put(result);
+                } catch (InterruptedException ex) {
+                    discard(result, 0);
+                    throw ex;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            FO2HLogger.reportError(ex.getMessage(), ex);
+        } finally {
+            // last effect thread tells write stage there are no more jobs
+            if (effectorsLeft.decrementAndGet() == 0) {
+                putEnd(transformed, writeThreads);
+            }
+        }
+    }
+
+    private void writeStage() {
+        try {
+            List<Job> jobs;
+            while ((jobs = transformed.take()) != END) {
+                for (int i = 0; i < jobs.size(); i++) {
+                    if (highligther.isStopped()) {
+                        discard(jobs, i);
+                        break;
+                    }
+                    try {
+                        highligther.write(jobs.get(i));
+                    } catch (Throwable ex) {
+                        FO2HLogger.reportError(ex.getMessage(), ex);
+                        Highligther.discard(jobs.get(i));
+                    }
+                    highligther.fileDone(total);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            FO2HLogger.reportError(ex.getMessage(), ex);
+        }
+    }
+
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2021 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.fo2h.util;
+
+/**
+ * Binary mask of the image packed in bits (64 pixels per word). Each row
+ * starts with new word, bit (x % 64) of word (x / 64) is pixel x of the row.
+ * Morphology is done on whole words with shifts and ORs.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class BitMask {
+
+    private final int width;
+    private final int height;
+    private final int wordsPerRow;
+    private final long[] words;
+
+    // valid bits of the last word in the row
+    private final long lastWordMask;
+
+    /**
+     * Creates new (empty) mask
+     *
+     * @param width width of the mask
+     * @param height height of the mask
+     */
+    public BitMask(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = (width + 63) >>> 6;
+        this.words = new long[wordsPerRow * height];
+        this.lastWordMask = ((width & 63) == 0) ? -1L : (1L << (width & 63)) - 1;
+    }
+
+    public void set(int px, int py) {
+        words[py * wordsPerRow + (px >>> 6)] |= 1L << px;
+    }
+
+    public boolean get(int px, int py) {
+        return (words[py * wordsPerRow + (px >>> 6)] & (1L << px)) != 0;
+    }
+
+    /**
+     * Dilates the mask with 3x3 square (pixel is set if any of it's 8
+     * neighbours or itself is set).
+     *
+     * @return dilated mask (new one)
+     */
+    public BitMask dilate() {
+        BitMask result = new BitMask(width, height);
+        // horizontal (left, center, right)
+        long[] rows = new long[words.length];
+        for (int py = 0; py < height; py++) {
+            final int row = py * wordsPerRow;
+            for (int i = 0; i < wordsPerRow; i++) {
+                final long word = words[row + i];
+                final long prev = (i > 0) ? words[row + i - 1] : 0L;
+                final long next = (i < wordsPerRow - 1) ? words[row + i + 1] : 0L;
+                rows[row + i] = word
+                        | (word << 1) | (prev >>> 63)
+                        | (word >>> 1) | (next << 63);
+            }
+            if (wordsPerRow > 0) {
+                rows[row + wordsPerRow - 1] &= lastWordMask;
+            }
+        }
+        // vertical (up, center, down)
+        for (int py = 0; py < height; py++) {
+            final int row = py * wordsPerRow;
+            for (int i = 0; i < wordsPerRow; i++) {
+                long word = rows[row + i];
+                if (py > 0) {
+                    word |= rows[row - wordsPerRow + i];
+                }
+                if (py < height - 1) {
+                    word |= rows[row + wordsPerRow + i];
+                }
+                result.words[row + i] = word;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Clears all the pixels which are set in other mask (of the same size).
+     *
+     * @param other other mask
+     */
+    public void andNot(BitMask other) {
+        for (int i = 0; i < words.length; i++) {
+            words[i] &= ~other.words[i];
+        }
+    }
+
+    /**
+     * Sets value of each pixel which is set in this mask
+     *
+     * @param dst pixels of the image (row major, same size as this mask)
+     * @param value value to set
+     */
+    public void fill(byte[] dst, byte value) {
+        fill(dst, width, 0, 0, value);
+    }
+
+    /**
+     * Sets value of each pixel which is set in this mask. Mask covers part of
+     * the (bigger) image.
+     *
+     * @param dst pixels of the image (row major)
+     * @param dstWidth width of the image
+     * @param dstX position of the mask in the image (X)
+     * @param dstY position of the mask in the image (Y)
+     * @param value value to set
+     */
+    public void fill(byte[] dst, int dstWidth, int dstX, int dstY, byte value) {
+        for (int py = 0; py < height; py++) {
+            final int row = (dstY + py) * dstWidth + dstX;
+            for (int i = 0; i < wordsPerRow; i++) {
+                long word = words[py * wordsPerRow + i];
+                while (word != 0L) {
+                    dst[row + (i << 6) + Long.numberOfTrailingZeros(word)] = value;
+                    word &= word - 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets value of each pixel which is set in this mask
+     *
+     * @param dst pixels of the image (row major, same size as this mask)
+     * @param value value to set
+     */
+    public void fill(int[] dst, int value) {
+        fill(dst, width, 0, 0, value);
+    }
+
+    /**
+     * Sets value of each pixel which is set in this mask. Mask covers part of
+     * the (bigger) image.
+     *
+     * @param dst pixels of the image (row major)
+     * @param dstWidth width of the image
+     * @param dstX position of the mask in the image (X)
+     * @param dstY position of the mask in the image (Y)
+     * @param value value to set
+     */
+    public void fill(int[] dst, int dstWidth, int dstX, int dstY, int value) {
+        for (int py = 0; py < height; py++) {
+            final int row = (dstY + py) * dstWidth + dstX;
+            for (int i = 0; i < wordsPerRow; i++) {
+                long word = words[py * wordsPerRow + i];
+                while (word != 0L) {
+                    dst[row + (i << 6) + Long.numberOfTrailingZeros(word)] = value;
+                    word &= word - 1;
+                }
+            }
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getWordsPerRow() {
+        return wordsPerRow;
+    }
+
+    /**
+     * Gets words of the mask (row by row, each row is getWordsPerRow() long)
+     *
+     * @return words of the mask
+     */
+    public long[] getWords() {
+        return words;
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2021 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.fo2h.util;
+
+/**
+ * Blur of whole raster (single channel or ARGB) with running sums. Each pass
+ * is separable (horizontal then vertical) so the cost is O(pixels)
+ * regardless of the radius. Edges are clamped (edge pixels are repeated).
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class BlurEngine {
+
+    // number of box passes which approximate the Gaussian
+    private static final int GAUSS_PASSES = 3;
+
+    private BlurEngine() {
+    }
+
+    /**
+     * Box blur of single channel. Each result is (truncated) average of
+     * (2 * radius + 1)^2 samples around the pixel, same as
+     * {@link ColorSample#getSample(java.awt.image.WritableRaster, int, int, int)}.
+     *
+     * @param src source samples (row major)
+     * @param width width of the raster
+     * @param height height of the raster
+     * @param radius radius of the box
+     * @param dst destination samples (can be the same as source)
+     */
+    public static void boxBlur(int[] src, int width, int height, int radius, int[] dst) {
+        final int len = 2 * radius + 1;
+        int[] temp = new int[width * height];
+        horizontalSum(src, width, height, radius, temp);
+        verticalSum(temp, width, height, radius, dst);
+        for (int e = 0; e < width * height; e++) {
+            dst[e] /= len * len;
+        }
+    }
+
+    /**
+     * Box blur of ARGB pixels (each channel separately). Same as
+     * {@link ColorSample#getSample(java.awt.image.WritableRaster, int, int, int)}
+     * for each pixel.
+     *
+     * @param pixels ARGB pixels (row major)
+     * @param width width of the raster
+     * @param height height of the raster
+     * @param radius radius of the box
+     * @param dst destination ARGB pixels (can be the same as source)
+     */
+    public static void boxBlurARGB(int[] pixels, int width, int height, int radius, int[] dst) {
+        int[] channel = new int[width * height];
+        int[] result = new int[width * height];
+        for (int shift = 0; shift < 32; shift += 8) {
+            for (int e = 0; e < channel.length; e++) {
+                channel[e] = (pixels[e] >>> shift) & 0xFF;
+            }
+            boxBlur(channel, width, height, radius, channel);
+            for (int e = 0; e < channel.length; e++) {
+                result[e] |= channel[e] << shift;
+            }
+        }
+        System.arraycopy(result, 0, dst, 0, result.length);
+    }
+
+    /**
+     * Gaussian blur of single channel, approximated with three successive box
+     * blurs (sigma is one third of the radius, so blur fades out at the
+     * radius). Radius smaller than three is single box blur.
+     *
+     * @param src source samples (row major)
+     * @param width width of the raster
+     * @param height height of the raster
+     * @param radius radius of the blur
+     * @param dst destination samples (can be the same as source)
+     */
+    public static void gaussianBlur(int[] src, int width, int height, int radius, int[] dst) {
+        System.arraycopy(src, 0, dst, 0, width * height);
+        if (radius <= 0) {
+            return;
+        }
+        int[] temp = new int[width * height];
+        final int[] radii = (radius < GAUSS_PASSES) ? new int[]{radius} : getGaussBoxRadii(radius / 3.0);
+        for (int boxRadius : radii) {
+            if (boxRadius > 0) {
+                final int len = 2 * boxRadius + 1;
+                horizontalSum(dst, width, height, boxRadius, temp);
+                for (int e = 0; e < temp.length; e++) {
+                    temp[e] = (temp[e] + len / 2) / len;
+                }
+                verticalSum(temp, width, height, boxRadius, dst);
+                for (int e = 0; e < temp.length; e++) {
+                    dst[e] = (dst[e] + len / 2) / len;
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets radii of the boxes which approximate Gaussian with given sigma
+     * (box widths differ by at most two).
+     *
+     * @param sigma standard deviation
+     * @return box radii
+     */
+    private static int[] getGaussBoxRadii(double sigma) {
+        final double idealWidth = Math.sqrt(12.0 * sigma * sigma / GAUSS_PASSES + 1.0);
+        int lower = (int) Math.floor(idealWidth);
+        if (lower % 2 == 0) {
+            lower--;
+        }
+        final int upper = lower + 2;
+        final double idealCount = (12.0 * sigma * sigma - GAUSS_PASSES * lower * lower - 4.0 * GAUSS_PASSES * lower - 3.0 * GAUSS_PASSES) / (-4.0 * lower - 4.0);
+        final long count = Math.round(idealCount);
+        int[] radii = new int[GAUSS_PASSES];
+        for (int i = 0; i < GAUSS_PASSES; i++) {
+            radii[i] = ((i < count) ? lower - 1 : upper - 1) / 2;
+        }
+        return radii;
+    }
+
+    // sums of 2 * radius + 1 samples in each row (running sum)
+    private static void horizontalSum(int[] src, int width, int height, int radius, int[] dst) {
+        for (int py = 0; py < height; py++) {
+            final int row = py * width;
+            int sum = 0;
+            for (int i = -radius; i <= radius; i++) {
+                sum += src[row + Math.min(Math.max(i, 0), width - 1)];
+            }
+            for (int px = 0; px < width; px++) {
+                dst[row + px] = sum;
+                sum += src[row + Math.min(px + radius + 1, width - 1)]
+                        - src[row + Math.max(px - radius, 0)];
+            }
+        }
+    }
+
+    // sums of 2 * radius + 1 samples in each column (running sum)
+    private static void verticalSum(int[] src, int width, int height, int radius, int[] dst) {
+        int[] sums = new int[width];
+        for (int i = -radius; i <= radius; i++) {
+            final int row = Math.min(Math.max(i, 0), height - 1) * width;
+            for (int px = 0; px < width; px++) {
+                sums[px] += src[row + px];
+            }
+        }
+        for (int py = 0; py < height; py++) {
+            final int add = Math.min(py + radius + 1, height - 1) * width;
+            final int remove = Math.max(py - radius, 0) * width;
+            for (int px = 0; px < width; px++) {
+                dst[py * width + px] = sums[px];
+                sums[px] += src[add + px] - src[remove + px];
+            }
+        }
+    }
+
+}
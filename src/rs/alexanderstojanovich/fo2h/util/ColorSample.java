@@ -47,6 +47,11 @@ public class ColorSample { // used primarily for drawing outline in Work
     //--------------------------------------------------------------------------
     // B - ESSENTIAL STATIC METHOD
     //--------------------------------------------------------------------------    
+    // Gauss kernel coefficients for single pass
+    private static final float A = 0.123317f; // up-left-right-down
+    private static final float B = 0.077847f; // diagonal
+    private static final float C = 0.195346f; // center  
+
     /**
      * Get Sample from all of adjacent pixels on given the offset
      *
@@ -57,42 +62,57 @@ public class ColorSample { // used primarily for drawing outline in Work
      * @return sample structure
      */
     public static ColorSample getSample(WritableRaster wr, int px, int py, int offset) {
-        // INPUT LOGIC          
-        int len = 2 * offset + 1;
-        int[] offX = new int[len];
-        int[] offY = new int[len];
-        int e = 0; // used for indexing
-        for (int i = -offset; i <= offset; i++) {
-            if (i < 0) {
-                offX[e] = Math.max(px + i, 0);
-                offY[e] = Math.max(py + i, 0);
-            } else {
-                offX[e] = Math.min(px + i, wr.getWidth() - 1);
-                offY[e] = Math.min(py + i, wr.getHeight() - 1);
-            }
-            e++;
-        }
-        //----------------------------------------------------------------------
-        // RED, GREEN, BLUE AND ALPHA SAMPLE        
+        int[] sample = new int[4];
+        getSample(wr, px, py, offset, sample);
+        return new ColorSample(sample[0], sample[1], sample[2], sample[3]);
+    }
+
+    /**
+     * Get Sample from all of adjacent pixels on given the offset (into the
+     * scratch array, no allocation)
+     *
+     * @param wr Writable raster (must be RGBA)
+     * @param px pixel x coordinate
+     * @param py pixel y coordinate
+     * @param offset corresponds to outline width
+     * @param sample scratch array for red, green, blue and alpha (length 4)
+     */
+    public static void getSample(WritableRaster wr, int px, int py, int offset, int[] sample) {
+        final int len = 2 * offset + 1;
+        // RED, GREEN, BLUE AND ALPHA SAMPLE
         int sumR = 0;
         int sumG = 0;
         int sumB = 0;
         int sumA = 0;
-        for (int i = 0; i < offX.length; i++) {
-            for (int j = 0; j < offY.length; j++) {
-                sumR += wr.getSample(offX[i], offY[j], 0);
-                sumG += wr.getSample(offX[i], offY[j], 1);
-                sumB += wr.getSample(offX[i], offY[j], 2);
-                sumA += wr.getSample(offX[i], offY[j], 3);
+        for (int i = -offset; i <= offset; i++) {
+            final int x = Math.min(Math.max(px + i, 0), wr.getWidth() - 1);
+            for (int j = -offset; j <= offset; j++) {
+                final int y = Math.min(Math.max(py + j, 0), wr.getHeight() - 1);
+                sumR += wr.getSample(x, y, 0);
+                sumG += wr.getSample(x, y, 1);
+                sumB += wr.getSample(x, y, 2);
+                sumA += wr.getSample(x, y, 3);
             }
         }
-        int avgR = sumR / (len * len);
-        int avgG = sumG / (len * len);
-        int avgB = sumB / (len * len);
-        int avgA = sumA / (len * len);
-        //----------------------------------------------------------------------        
-        // OUTPUT LOGIC
-        return new ColorSample(avgR, avgG, avgB, avgA);
+        sample[0] = sumR / (len * len);
+        sample[1] = sumG / (len * len);
+        sample[2] = sumB / (len * len);
+        sample[3] = sumA / (len * len);
+    }
+
+    /**
+     * Get Samples of all the pixels on given the offset (same as getSample for
+     * each pixel). Whole raster is processed at once, cost doesn't depend on
+     * the offset.
+     *
+     * @param pixels ARGB pixels (row major)
+     * @param width width of the image
+     * @param height height of the image
+     * @param offset corresponds to outline width
+     * @param dst destination array for ARGB samples
+     */
+    public static void getSamples(int[] pixels, int width, int height, int offset, int[] dst) {
+        BlurEngine.boxBlurARGB(pixels, width, height, offset, dst);
     }
 
     /**
@@ -105,58 +125,154 @@ public class ColorSample { // used primarily for drawing outline in Work
      * @return sample structure
      */
     public static ColorSample getGaussianBlurSample(WritableRaster wr, int px, int py) {
-        // INPUT LOGIC
-        final float a = 0.123317f; // up-left-right-down
-        final float b = 0.077847f; // diagonal
-        final float c = 0.195346f; // center  
-        int[] offX = {Math.max(px - 1, 0), px, Math.min(px + 1, wr.getWidth() - 1)};
-        int[] offY = {Math.max(py - 1, 0), py, Math.min(py + 1, wr.getHeight() - 1)};
-        int red = 0;
-        int green = 0;
-        int blue = 0;
-        int alpha = 0;
-        // [0] - RED
-        red += b * (wr.getSample(offX[0], offY[0], 0)
-                + wr.getSample(offX[2], offY[0], 0)
-                + wr.getSample(offX[0], offY[2], 0)
-                + wr.getSample(offX[2], offY[2], 0));
-
-        red += c * (wr.getSample(offX[1], offY[1], 0));
-
-        red += a * (wr.getSample(offX[1], offY[0], 0) + wr.getSample(offX[0], offY[1], 0)
-                + wr.getSample(offX[1], offY[2], 0) + wr.getSample(offX[2], offY[1], 0));
-        // [1] - GREEN
-        green += b * (wr.getSample(offX[0], offY[0], 1)
-                + wr.getSample(offX[2], offY[0], 1)
-                + wr.getSample(offX[0], offY[2], 1)
-                + wr.getSample(offX[2], offY[2], 1));
-
-        green += c * (wr.getSample(offX[1], offY[1], 1));
-
-        green += a * (wr.getSample(offX[1], offY[0], 1) + wr.getSample(offX[0], offY[1], 1)
-                + wr.getSample(offX[1], offY[2], 1) + wr.getSample(offX[2], offY[1], 1));
-        // [2] - BLUE
-        blue += b * (wr.getSample(offX[0], offY[0], 2)
-                + wr.getSample(offX[2], offY[0], 2)
-                + wr.getSample(offX[0], offY[2], 2)
-                + wr.getSample(offX[2], offY[2], 2));
-
-        blue += c * (wr.getSample(offX[1], offY[1], 2));
-
-        blue += a * (wr.getSample(offX[1], offY[0], 2) + wr.getSample(offX[0], offY[1], 2)
-                + wr.getSample(offX[1], offY[2], 2) + wr.getSample(offX[2], offY[1], 2));
-        // [3] - ALPHA
-        alpha += b * (wr.getSample(offX[0], offY[0], 3)
-                + wr.getSample(offX[2], offY[0], 3)
-                + wr.getSample(offX[0], offY[2], 3)
-                + wr.getSample(offX[2], offY[2], 3));
-
-        alpha += c * (wr.getSample(offX[1], offY[1], 3));
-
-        alpha += a * (wr.getSample(offX[1], offY[0], 3) + wr.getSample(offX[0], offY[1], 3)
-                + wr.getSample(offX[1], offY[2], 3) + wr.getSample(offX[2], offY[1], 3));
-        // FINALLY, OUTPUT LOGIC
-        return new ColorSample(red, green, blue, alpha);
+        int[] sample = new int[4];
+        getGaussianBlurSample(wr, px, py, sample);
+        return new ColorSample(sample[0], sample[1], sample[2], sample[3]);
+    }
+
+    /**
+     * Get Sample from all of adjacent pixels with Gauss kernel coefficients for
+     * single pass (into the scratch array, no allocation)
+     *
+     * @param wr Writable raster (must be RGBA)
+     * @param px pixel x coordinate
+     * @param py pixel y coordinate
+     * @param sample scratch array for red, green, blue and alpha (length 4)
+     */
+    public static void getGaussianBlurSample(WritableRaster wr, int px, int py, int[] sample) {
+        final int x0 = Math.max(px - 1, 0);
+        final int x2 = Math.min(px + 1, wr.getWidth() - 1);
+        final int y0 = Math.max(py - 1, 0);
+        final int y2 = Math.min(py + 1, wr.getHeight() - 1);
+        for (int band = 0; band < 4; band++) {
+            sample[band] = gauss(wr.getSample(x0, y0, band) + wr.getSample(x2, y0, band)
+                    + wr.getSample(x0, y2, band) + wr.getSample(x2, y2, band),
+                    wr.getSample(px, py, band),
+                    wr.getSample(px, y0, band) + wr.getSample(x0, py, band)
+                    + wr.getSample(px, y2, band) + wr.getSample(x2, py, band));
+        }
+    }
+
+    /**
+     * Get Sample with Gauss kernel coefficients for single pass as packed
+     * ARGB color
+     *
+     * @param wr Writable raster (must be RGBA)
+     * @param px pixel x coordinate
+     * @param py pixel y coordinate
+     * @return sample as packed ARGB
+     */
+    public static int getGaussianBlurARGB(WritableRaster wr, int px, int py) {
+        final int x0 = Math.max(px - 1, 0);
+        final int x2 = Math.min(px + 1, wr.getWidth() - 1);
+        final int y0 = Math.max(py - 1, 0);
+        final int y2 = Math.min(py + 1, wr.getHeight() - 1);
+        int argb = 0;
+        for (int band = 0; band < 4; band++) {
+            int value = gauss(wr.getSample(x0, y0, band) + wr.getSample(x2, y0, band)
+                    + wr.getSample(x0, y2, band) + wr.getSample(x2, y2, band),
+                    wr.getSample(px, py, band),
+                    wr.getSample(px, y0, band) + wr.getSample(x0, py, band)
+                    + wr.getSample(px, y2, band) + wr.getSample(x2, py, band));
+            // band 3 (alpha) goes to the top byte
+            argb |= value << ((band == 3) ? 24 : 16 - 8 * band);
+        }
+        return argb;
+    }
+
+    /**
+     * Gauss blur of one row of ARGB pixels (from raw int array, like one of
+     * TYPE_INT_ARGB image). Result is packed ARGB for each pixel of the row.
+     *
+     * @param pixels ARGB pixels (row major)
+     * @param width width of the image
+     * @param height height of the image
+     * @param py row to blur
+     * @param dst destination array
+     * @param dstOffset position of the row in the destination array
+     */
+    public static void getGaussianBlurRow(int[] pixels, int width, int height, int py, int[] dst, int dstOffset) {
+        final int up = Math.max(py - 1, 0) * width;
+        final int row = py * width;
+        final int down = Math.min(py + 1, height - 1) * width;
+        for (int px = 0; px < width; px++) {
+            final int x0 = Math.max(px - 1, 0);
+            final int x2 = Math.min(px + 1, width - 1);
+            int argb = 0;
+            for (int shift = 0; shift < 32; shift += 8) {
+                int value = gauss(((pixels[up + x0] >>> shift) & 0xFF) + ((pixels[up + x2] >>> shift) & 0xFF)
+                        + ((pixels[down + x0] >>> shift) & 0xFF) + ((pixels[down + x2] >>> shift) & 0xFF),
+                        (pixels[row + px] >>> shift) & 0xFF,
+                        ((pixels[up + px] >>> shift) & 0xFF) + ((pixels[row + x0] >>> shift) & 0xFF)
+                        + ((pixels[down + px] >>> shift) & 0xFF) + ((pixels[row + x2] >>> shift) & 0xFF));
+                argb |= value << shift;
+            }
+            dst[dstOffset + px] = argb;
+        }
+    }
+
+    /**
+     * Gauss blur of one row of single channel samples (from raw byte array,
+     * like alpha or grey channel).
+     *
+     * @param samples unsigned samples (row major)
+     * @param width width of the image
+     * @param height height of the image
+     * @param py row to blur
+     * @param dst destination array
+     * @param dstOffset position of the row in the destination array
+     */
+    public static void getGaussianBlurRow(byte[] samples, int width, int height, int py, int[] dst, int dstOffset) {
+        final int up = Math.max(py - 1, 0) * width;
+        final int row = py * width;
+        final int down = Math.min(py + 1, height - 1) * width;
+        for (int px = 0; px < width; px++) {
+            final int x0 = Math.max(px - 1, 0);
+            final int x2 = Math.min(px + 1, width - 1);
+            dst[dstOffset + px] = gauss((samples[up + x0] & 0xFF) + (samples[up + x2] & 0xFF)
+                    + (samples[down + x0] & 0xFF) + (samples[down + x2] & 0xFF),
+                    samples[row + px] & 0xFF,
+                    (samples[up + px] & 0xFF) + (samples[row + x0] & 0xFF)
+                    + (samples[down + px] & 0xFF) + (samples[row + x2] & 0xFF));
+        }
+    }
+
+    /**
+     * Gauss blur of whole image of ARGB pixels (from raw int array).
+     *
+     * @param pixels ARGB pixels (row major)
+     * @param width width of the image
+     * @param height height of the image
+     * @param dst destination array (not the same as pixels)
+     */
+    public static void getGaussianBlur(int[] pixels, int width, int height, int[] dst) {
+        for (int py = 0; py < height; py++) {
+            getGaussianBlurRow(pixels, width, height, py, dst, py * width);
+        }
+    }
+
+    /**
+     * Gauss blur of whole image of single channel samples (from raw byte
+     * array).
+     *
+     * @param samples unsigned samples (row major)
+     * @param width width of the image
+     * @param height height of the image
+     * @param dst destination array
+     */
+    public static void getGaussianBlur(byte[] samples, int width, int height, int[] dst) {
+        for (int py = 0; py < height; py++) {
+            getGaussianBlurRow(samples, width, height, py, dst, py * width);
+        }
+    }
+
+    // single channel value (truncated after each addition as in the past)
+    private static int gauss(int diagonal, int center, int edge) {
+        int value = 0;
+        value += B * diagonal;
+        value += C * center;
+        value += A * edge;
+        return value;
     }
 
     //--------------------------------------------------------------------------
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2021 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.fo2h.util;
+
+/**
+ * Exact squared Euclidean distance transform (Felzenszwalb & Huttenlocher)
+ * of the binary mask. Distance of each pixel to the nearest set pixel is
+ * computed in linear time (one pass over columns and one over rows).
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class DistanceTransform {
+
+    private DistanceTransform() {
+    }
+
+    /**
+     * Computes squared distance of each pixel to the nearest set pixel of the
+     * mask. If mask has no set pixels distances are "infinite" (greater than
+     * any distance in the raster).
+     *
+     * @param mask binary mask
+     * @return squared distances (row major)
+     */
+    public static int[] squaredDistance(BitMask mask) {
+        final int width = mask.getWidth();
+        final int height = mask.getHeight();
+        final int inf = width * width + height * height + 1;
+        final int size = Math.max(width, height);
+        int[] dist = new int[width * height];
+        // scratch for 1D transform
+        int[] f = new int[size];
+        int[] d = new int[size];
+        int[] v = new int[size];
+        double[] z = new double[size + 1];
+        // columns
+        for (int px = 0; px < width; px++) {
+            for (int py = 0; py < height; py++) {
+                f[py] = mask.get(px, py) ? 0 : inf;
+            }
+            transform(f, height, d, v, z);
+            for (int py = 0; py < height; py++) {
+                dist[py * width + px] = d[py];
+            }
+        }
+        // rows
+        for (int py = 0; py < height; py++) {
+            System.arraycopy(dist, py * width, f, 0, width);
+            transform(f, width, d, v, z);
+            System.arraycopy(d, 0, dist, py * width, width);
+        }
+        return dist;
+    }
+
+    /**
+     * 1D squared distance transform (lower envelope of parabolas).
+     *
+     * @param f sampled function
+     * @param n number of samples
+     * @param d result
+     * @param v scratch (locations of parabolas in envelope)
+     * @param z scratch (boundaries between parabolas)
+     */
+    private static void transform(int[] f, int n, int[] d, int[] v, double[] z) {
+        int k = 0;
+        v[0] = 0;
+        z[0] = Double.NEGATIVE_INFINITY;
+        z[1] = Double.POSITIVE_INFINITY;
+        for (int q = 1; q < n; q++) {
+            double s = intersection(f, q, v[k]);
+            while (s <= z[k]) {
+                k--;
+                s = intersection(f, q, v[k]);
+            }
+            k++;
+            v[k] = q;
+            z[k] = s;
+            z[k + 1] = Double.POSITIVE_INFINITY;
+        }
+        k = 0;
+        for (int q = 0; q < n; q++) {
+            while (z[k + 1] < q) {
+                k++;
+            }
+            final int dq = q - v[k];
+            d[q] = dq * dq + f[v[k]];
+        }
+    }
+
+    // intersection of parabolas rooted at q and p
+    private static double intersection(int[] f, int q, int p) {
+        return ((f[q] + (double) q * q) - (f[p] + (double) p * p)) / (2.0 * q - 2.0 * p);
+    }
+
+}
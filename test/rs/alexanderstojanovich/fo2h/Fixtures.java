@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2021 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.fo2h;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import rs.alexanderstojanovich.fo2h.frm.ImageData;
+
+/**
+ * Random images and frames shared by the tests.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    /**
+     * Makes random frame (palette entries) up to 40x40 pixels with random
+     * offset
+     *
+     * @param rnd random generator
+     * @param density probability of non-transparent pixel
+     * @return random frame
+     */
+    public static ImageData randomFrame(Random rnd, double density) {
+        final int width = 1 + rnd.nextInt(40);
+        final int height = 1 + rnd.nextInt(40);
+        ImageData frame = new ImageData(width, height, rnd.nextInt(10) - 5, rnd.nextInt(10) - 5);
+        for (int i = 0; i < width * height; i++) {
+            if (rnd.nextDouble() < density) {
+                frame.getData()[i] = (byte) rnd.nextInt(256);
+            }
+        }
+        return frame;
+    }
+
+    /**
+     * Makes random ARGB image (random density of non-transparent pixels) with
+     * some blue, almost transparent and transparent-blue pixels.
+     *
+     * @param rnd random generator
+     * @param maxWidth maximum width
+     * @param maxHeight maximum height
+     * @return random image
+     */
+    public static BufferedImage randomImage(Random rnd, int maxWidth, int maxHeight) {
+        final int width = 1 + rnd.nextInt(maxWidth);
+        final int height = 1 + rnd.nextInt(maxHeight);
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        final double density = rnd.nextDouble();
+        for (int py = 0; py < height; py++) {
+            for (int px = 0; px < width; px++) {
+                int pixel = (rnd.nextDouble() < density) ? rnd.nextInt() : 0;
+                switch (rnd.nextInt(10)) {
+                    case 0:
+                        pixel = Color.BLUE.getRGB();
+                        break;
+                    case 1:
+                        pixel = (rnd.nextInt(8) << 24) | (pixel & 0xFFFFFF);
+                        break;
+                    case 2:
+                        pixel = 0x000000FF;
+                        break;
+                }
+                img.setRGB(px, py, pixel);
+            }
+        }
+        return img;
+    }
+
+    /**
+     * Makes pixels with alpha below given minimum transparent
+     *
+     * @param img ARGB image
+     * @param minAlpha minimum alpha of non-transparent pixel
+     */
+    public static void hardenAlpha(BufferedImage img, int minAlpha) {
+        int[] pixels = pixels(img);
+        for (int e = 0; e < pixels.length; e++) {
+            if ((pixels[e] >>> 24) < minAlpha) {
+                pixels[e] = 0;
+            }
+        }
+        img.setRGB(0, 0, img.getWidth(), img.getHeight(), pixels, 0, img.getWidth());
+    }
+
+    /**
+     * Copies ARGB image
+     *
+     * @param img image to copy
+     * @return copy of the image
+     */
+    public static BufferedImage copy(BufferedImage img) {
+        BufferedImage result = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        result.setData(img.getData());
+        return result;
+    }
+
+    /**
+     * Gets ARGB pixels of the image (row major)
+     *
+     * @param img image
+     * @return pixels
+     */
+    public static int[] pixels(BufferedImage img) {
+        return img.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth());
+    }
+
+}
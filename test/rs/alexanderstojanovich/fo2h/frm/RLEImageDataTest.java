@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2021 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.fo2h.frm;
+
+import java.util.Random;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import rs.alexanderstojanovich.fo2h.Fixtures;
+
+/**
+ * Checks that compact frames (encoded and dense) decode to the same frame.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class RLEImageDataTest {
+
+    @Test
+    public void testRoundTrip() {
+        Random rnd = new Random(4L);
+        for (int test = 0; test < 500; test++) {
+            ImageData frame = Fixtures.randomFrame(rnd, rnd.nextDouble());
+            RLEImageData compact = new RLEImageData(frame);
+            ImageData decoded = compact.toImageData();
+            assertEquals(frame.getWidth(), decoded.getWidth());
+            assertEquals(frame.getOffsetX(), decoded.getOffsetX());
+            assertEquals(frame.getOffsetY(), decoded.getOffsetY());
+            assertArrayEquals(frame.getData(), decoded.getData());
+            assertEquals(frame.getOpaqueBounds(), compact.getOpaqueBounds());
+        }
+    }
+
+    @Test
+    public void testDenseFallback() {
+        Random rnd = new Random(6L);
+        // noise has many short spans, encoding it doesn't pay off
+        ImageData noise = Fixtures.randomFrame(rnd, 0.5);
+        RLEImageData compact = new RLEImageData(noise);
+        assertTrue(compact.isDense());
+        assertArrayEquals(noise.getData(), compact.toImageData().getData());
+        int rows = 0;
+        RLEImageData.Cursor cursor = compact.cursor();
+        while (cursor.next()) {
+            assertEquals(0, cursor.getX());
+            assertEquals(noise.getWidth(), cursor.getLength());
+            assertEquals(rows * noise.getWidth(), cursor.getDataPos());
+            rows++;
+        }
+        assertEquals(noise.getHeight(), rows);
+        // single span is always encoded
+        ImageData sparse = new ImageData(64, 64, 0, 0);
+        sparse.getData()[64 * 10 + 5] = 1;
+        assertFalse(new RLEImageData(sparse).isDense());
+    }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2021 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.fo2h.highlighter;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import static org.junit.Assert.assertArrayEquals;
+import org.junit.Test;
+import rs.alexanderstojanovich.fo2h.Fixtures;
+
+/**
+ * Checks that fused raster kernel gives the same images as removeBlue
+ * followed by createOutline.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class FusedKernelTest {
+
+    @Test
+    public void testApplyMatchesBaseline() {
+        Random rnd = new Random(7L);
+        for (int test = 0; test < 500; test++) {
+            BufferedImage img = Fixtures.randomImage(rnd, 30, 30);
+            Color color = new Color(rnd.nextInt(256), rnd.nextInt(256), rnd.nextInt(256));
+            for (int mode = 0; mode < 4; mode++) {
+                final boolean fillInterior = (mode & 1) != 0;
+                final boolean drawOutline = (mode & 2) != 0;
+                BufferedImage expected = Fixtures.copy(img);
+                Highligther.removeBlue(expected);
+                Highligther.createOutline(expected, color, fillInterior, drawOutline);
+                BufferedImage actual = Fixtures.copy(img);
+                FusedKernel.apply(actual, color, fillInterior, drawOutline);
+                assertArrayEquals(Fixtures.pixels(expected), Fixtures.pixels(actual));
+            }
+        }
+    }
+
+}
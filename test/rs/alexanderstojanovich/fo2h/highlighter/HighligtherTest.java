@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2021 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.fo2h.highlighter;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import rs.alexanderstojanovich.fo2h.Fixtures;
+
+/**
+ * Checks that outline made from the bit mask is the same as Gaussian sampled
+ * outline for images with hard alpha.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class HighligtherTest {
+
+    @Test
+    public void testBitMaskOutlineMatchesBaseline() {
+        Random rnd = new Random(9L);
+        int hard = 0;
+        for (int test = 0; test < 1000; test++) {
+            BufferedImage img = Fixtures.randomImage(rnd, 70, 30);
+            // every other image keeps its soft alpha pixels
+            if (test % 2 != 0) {
+                Fixtures.hardenAlpha(img, 13);
+            }
+            if (!Highligther.isHardAlpha(img)) {
+                continue;
+            }
+            hard++;
+            Color color = new Color(rnd.nextInt());
+            BufferedImage expected = Fixtures.copy(img);
+            Highligther.removeBlue(expected);
+            Highligther.createOutline(expected, color, false, true);
+            BufferedImage actual = Fixtures.copy(img);
+            Highligther.removeBlue(actual);
+            Highligther.createOutline(actual, color, 1);
+            assertArrayEquals(Fixtures.pixels(expected), Fixtures.pixels(actual));
+        }
+        assertTrue(hard > 0);
+    }
+
+    @Test
+    public void testHardGlowThreshold() {
+        Random rnd = new Random(11L);
+        int faint = 0;
+        int glowing = 0;
+        for (int test = 0; test < 200; test++) {
+            BufferedImage img = Fixtures.randomImage(rnd, 30, 30);
+            Highligther.removeBlue(img);
+            Color color = new Color(rnd.nextInt(256), rnd.nextInt(256), rnd.nextInt(256));
+            final int radius = 1 + rnd.nextInt(4);
+            BufferedImage soft = Fixtures.copy(img);
+            Highligther.createGlow(soft, color, radius);
+            BufferedImage hard = Fixtures.copy(img);
+            Highligther.createGlow(hard, color, radius, true);
+            final int[] src = Fixtures.pixels(img);
+            final int[] softPixels = Fixtures.pixels(soft);
+            final int[] hardPixels = Fixtures.pixels(hard);
+            for (int e = 0; e < src.length; e++) {
+                final int alpha = (src[e] >>> 24 == 0) ? softPixels[e] >>> 24 : 0;
+                if (alpha >= 128) {
+                    // opaque glow color
+                    assertEquals(0xFF000000 | color.getRGB(), hardPixels[e]);
+                    glowing++;
+                } else {
+                    // opaque pixels and faint glow are left as they are
+                    assertEquals(src[e], hardPixels[e]);
+                    if (alpha > 0) {
+                        faint++;
+                    }
+                }
+            }
+        }
+        assertTrue(faint > 0 && glowing > 0);
+    }
+
+}
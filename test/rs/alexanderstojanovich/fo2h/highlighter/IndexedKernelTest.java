@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2021 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.fo2h.highlighter;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import rs.alexanderstojanovich.fo2h.Fixtures;
+import rs.alexanderstojanovich.fo2h.frm.ImageData;
+import rs.alexanderstojanovich.fo2h.frm.Palette;
+import rs.alexanderstojanovich.fo2h.frm.RLEImageData;
+
+/**
+ * Checks that palette index kernel gives the same frames as the ARGB path
+ * (removeBlue, createOutline and quantization).
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class IndexedKernelTest {
+
+    @BeforeClass
+    public static void loadPalette() {
+        Palette.load("Fallout Palette.act");
+    }
+
+    /**
+     * Makes random color (every third is palette color)
+     *
+     * @param rnd random generator
+     * @param test test number
+     * @return random color
+     */
+    static Color randomColor(Random rnd, int test) {
+        if (test % 3 == 0) {
+            return new Color(Palette.getColors()[rnd.nextInt(256)]);
+        }
+        return new Color(rnd.nextInt(256), rnd.nextInt(256), rnd.nextInt(256));
+    }
+
+    /**
+     * Draws frame on ARGB image with given margin on each side
+     *
+     * @param frame frame
+     * @param margin margin in pixels
+     * @return ARGB image
+     */
+    static BufferedImage toARGB(ImageData frame, int margin) {
+        BufferedImage img = new BufferedImage(frame.getWidth() + 2 * margin,
+                frame.getHeight() + 2 * margin, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = img.createGraphics();
+        g2d.drawImage(frame.toIndexedImage(), margin, margin, null);
+        g2d.dispose();
+        return img;
+    }
+
+    static void assertFrameEquals(ImageData expected, ImageData actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        assertEquals(expected.getOffsetX(), actual.getOffsetX());
+        assertEquals(expected.getOffsetY(), actual.getOffsetY());
+        assertArrayEquals(expected.getData(), actual.getData());
+    }
+
+    @Test
+    public void testApplyMatchesARGB() {
+        Random rnd = new Random(1L);
+        for (int test = 0; test < 300; test++) {
+            ImageData frame = Fixtures.randomFrame(rnd, rnd.nextDouble());
+            Color color = (test == 5) ? Color.BLUE : randomColor(rnd, test);
+            for (int mode = 0; mode < 4; mode++) {
+                final boolean fillInterior = (mode & 1) != 0;
+                final boolean drawOutline = (mode & 2) != 0;
+                BufferedImage img = toARGB(frame, 1);
+                Highligther.removeBlue(img);
+                Highligther.createOutline(img, color, fillInterior, drawOutline);
+                ImageData expected = new ImageData(img, frame.getOffsetX(), frame.getOffsetY());
+                ImageData actual = new IndexedKernel(color, fillInterior, drawOutline).apply(frame);
+                assertFrameEquals(expected, actual);
+            }
+        }
+    }
+
+    /**
+     * Draws outline of given width by brute force search of the nearest
+     * opaque pixel (reference for distance transform).
+     *
+     * @param img image with blue removed
+     * @param color outline color
+     * @param width outline width
+     */
+    static void bruteForceOutline(BufferedImage img, Color color, int width) {
+        final int w = img.getWidth();
+        final int h = img.getHeight();
+        int[] pixels = img.getRGB(0, 0, w, h, null, 0, w);
+        int[] result = pixels.clone();
+        for (int e = 0; e < pixels.length; e++) {
+            if ((pixels[e] >>> 24) != 0) {
+                continue;
+            }
+            int best = Integer.MAX_VALUE;
+            for (int o = 0; o < pixels.length; o++) {
+                if ((pixels[o] >>> 24) != 0) {
+                    final int dx = e % w - o % w;
+                    final int dy = e / w - o / w;
+                    best = Math.min(best, dx * dx + dy * dy);
+                }
+            }
+            if (best != Integer.MAX_VALUE && Highligther.isInOutline(best, width)) {
+                result[e] = color.getRGB();
+            }
+        }
+        img.setRGB(0, 0, w, h, result, 0, w);
+    }
+
+    @Test
+    public void testOutlineWidthMatchesBruteForce() {
+        Random rnd = new Random(5L);
+        for (int test = 0; test < 100; test++) {
+            ImageData frame = Fixtures.randomFrame(rnd, rnd.nextDouble());
+            Color color = randomColor(rnd, test);
+            final int width = 1 + rnd.nextInt(4);
+            final boolean fillInterior = rnd.nextBoolean();
+            BufferedImage expected = toARGB(frame, width);
+            Highligther.removeBlue(expected);
+            Highligther.createOutline(expected, color, fillInterior, false);
+            BufferedImage argb = toARGB(frame, width);
+            Highligther.removeBlue(argb);
+            Highligther.createOutline(argb, color, fillInterior, false);
+            bruteForceOutline(expected, color, width);
+            Highligther.createOutline(argb, color, width);
+            assertFrameEquals(new ImageData(expected, 0, 0), new ImageData(argb, 0, 0));
+            ImageData actual = new IndexedKernel(color, fillInterior, true, width).apply(frame);
+            assertFrameEquals(new ImageData(expected, frame.getOffsetX(), frame.getOffsetY()), actual);
+        }
+    }
+
+    @Test
+    public void testCompactMatchesApply() {
+        Random rnd = new Random(8L);
+        for (int test = 0; test < 200; test++) {
+            ImageData frame = Fixtures.randomFrame(rnd, rnd.nextDouble());
+            Color color = randomColor(rnd, test);
+            IndexedKernel kernel = new IndexedKernel(color, test % 2 == 0, true, 1 + test % 3);
+            assertFrameEquals(kernel.apply(frame), kernel.apply(new RLEImageData(frame)));
+        }
+    }
+
+    @Test
+    public void testMaskMatchesApply() {
+        Random rnd = new Random(3L);
+        for (int test = 0; test < 100; test++) {
+            ImageData frame = Fixtures.randomFrame(rnd, rnd.nextDouble());
+            Color color = randomColor(rnd, test);
+            IndexedKernel kernel = new IndexedKernel(color, test % 2 == 0, true);
+            assertFrameEquals(kernel.apply(frame), kernel.apply(kernel.mask(frame)));
+        }
+    }
+
+}
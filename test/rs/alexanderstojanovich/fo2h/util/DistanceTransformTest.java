@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2021 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.fo2h.util;
+
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Checks distance transform against brute force search of the nearest set
+ * pixel.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class DistanceTransformTest {
+
+    @Test
+    public void testSquaredDistance() {
+        Random rnd = new Random(2L);
+        for (int test = 0; test < 300; test++) {
+            final int width = 1 + rnd.nextInt(30);
+            final int height = 1 + rnd.nextInt(30);
+            final double density = rnd.nextDouble() * 0.2;
+            BitMask mask = new BitMask(width, height);
+            boolean any = false;
+            for (int py = 0; py < height; py++) {
+                for (int px = 0; px < width; px++) {
+                    if (rnd.nextDouble() < density) {
+                        mask.set(px, py);
+                        any = true;
+                    }
+                }
+            }
+            final int[] dist = DistanceTransform.squaredDistance(mask);
+            for (int e = 0; e < width * height; e++) {
+                if (any) {
+                    assertEquals(nearest(mask, e % width, e / width), dist[e]);
+                } else {
+                    assertTrue(dist[e] > width * width + height * height);
+                }
+            }
+        }
+    }
+
+    /**
+     * Squared distance from the pixel to the nearest set pixel
+     *
+     * @param mask binary mask
+     * @param px pixel x
+     * @param py pixel y
+     * @return squared distance (Integer.MAX_VALUE if none is set)
+     */
+    static int nearest(BitMask mask, int px, int py) {
+        int best = Integer.MAX_VALUE;
+        for (int y = 0; y < mask.getHeight(); y++) {
+            for (int x = 0; x < mask.getWidth(); x++) {
+                if (mask.get(x, y)) {
+                    best = Math.min(best, (x - px) * (x - px) + (y - py) * (y - py));
+                }
+            }
+        }
+        return best;
+    }
+
+}